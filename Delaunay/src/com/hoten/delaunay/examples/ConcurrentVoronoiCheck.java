@@ -0,0 +1,76 @@
+package com.hoten.delaunay.examples;
+
+import com.hoten.delaunay.geom.Point;
+import com.hoten.delaunay.geom.Rectangle;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.FlatDiagram;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.Voronoi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the same seeded site sets on many threads at once and checks that
+ * every diagram matches the one built alone, array for array. Diagrams on
+ * different threads must not share any state of the sweep.
+ */
+public class ConcurrentVoronoiCheck {
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int threads = 16;
+        int diagrams = 2000;
+        int numSites = 2000;
+        int bounds = 1000;
+        Rectangle plotBounds = new Rectangle(0, 0, bounds, bounds);
+
+        List<ArrayList<Point>> siteSets = new ArrayList<>();
+        List<FlatDiagram> sequential = new ArrayList<>();
+        for (int seed = 0; seed < 8; seed++) {
+            ArrayList<Point> points = uniformSites(numSites, bounds, new Random(seed));
+            siteSets.add(points);
+            sequential.add(new Voronoi(points, null, plotBounds).flatDiagram());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < diagrams; i++) {
+            int set = i % siteSets.size();
+            results.add(pool.submit(() -> sameArrays(sequential.get(set),
+                    new Voronoi(siteSets.get(set), null, plotBounds).flatDiagram())));
+        }
+        int different = 0;
+        for (Future<Boolean> result : results) {
+            different += result.get() ? 0 : 1;
+        }
+        pool.shutdown();
+
+        System.out.printf("%d diagrams on %d threads, %d different from the sequential build%n", diagrams, threads, different);
+        if (different > 0) {
+            System.exit(1);
+        }
+    }
+
+    // the same diagram down to the order of its edges and vertices
+    private static boolean sameArrays(FlatDiagram a, FlatDiagram b) {
+        return a.numSites == b.numSites && a.numVertices == b.numVertices
+                && a.numEdgeVertices == b.numEdgeVertices && a.numEdges == b.numEdges
+                && Arrays.equals(a.siteX, b.siteX) && Arrays.equals(a.siteY, b.siteY)
+                && Arrays.equals(a.vertexX, b.vertexX) && Arrays.equals(a.vertexY, b.vertexY)
+                && Arrays.equals(a.edgeVertex0, b.edgeVertex0) && Arrays.equals(a.edgeVertex1, b.edgeVertex1)
+                && Arrays.equals(a.edgeSite0, b.edgeSite0) && Arrays.equals(a.edgeSite1, b.edgeSite1)
+                && Arrays.equals(a.regionOffsets, b.regionOffsets) && Arrays.equals(a.regionVertices, b.regionVertices);
+    }
+
+    private static ArrayList<Point> uniformSites(int numSites, int bounds, Random r) {
+        ArrayList<Point> points = new ArrayList<>(numSites);
+        for (int i = 0; i < numSites; i++) {
+            points.add(new Point(r.nextDouble() * bounds, r.nextDouble() * bounds));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,170 @@
+package com.hoten.delaunay.examples;
+
+import com.hoten.delaunay.voronoi.Adjacency;
+import com.hoten.delaunay.voronoi.CornerStore;
+import com.hoten.delaunay.voronoi.StageTiming;
+import com.hoten.delaunay.voronoi.VoronoiGraph;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.PoissonDiskSampler;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.Voronoi;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times the passes that spread values over the corners of a graph: the
+ * distance from the border that elevation is ranked by, the flood fill of the
+ * oceans and the moisture spread from rivers and lakes. Each runs again on
+ * its own graph a few times after warming up, the fastest run counts. Next to
+ * the distances and the moisture, the FIFO relaxation they replaced runs on
+ * the same corners, and both must give the same arrays. 150000 sites need a
+ * big heap, e.g. -Xmx3g.
+ */
+public class PropagationBenchmark {
+
+    private static final String[] STAGES = {"distances", "oceans", "spread moisture"};
+
+    public static void main(String[] args) {
+        int[] sizes = {45000, 150000};
+        int bounds = 1000;
+        int runs = 10;
+        boolean allSame = true;
+
+        System.out.printf("%-10s %20s %20s %20s %20s %20s %8s%n", "sites", "distances [ms]", "FIFO [ms]",
+                "oceans [ms]", "spread moisture [ms]", "FIFO [ms]", "same");
+        for (int size : sizes) {
+            Voronoi v = new Voronoi(new PoissonDiskSampler(), size, bounds, bounds, new Random(size), null);
+            VoronoiGraph graph = new TestGraphImpl(v, 0, new Random(2));
+            CornerStore s = graph.getCornerStore();
+            System.out.printf("%-10d", graph.centers.size());
+
+            double[] distance = new double[s.size()];
+            double[] moisture = new double[s.size()];
+            long[] fastest = new long[STAGES.length];
+            Arrays.fill(fastest, Long.MAX_VALUE);
+            long fifoDistances = Long.MAX_VALUE, fifoMoisture = Long.MAX_VALUE;
+            for (int i = 0; i < runs; i++) {
+                for (int k = 0; k < STAGES.length; k++) {
+                    graph.invalidate(STAGES[k]);
+                    graph.update();
+                    fastest[k] = Math.min(fastest[k], nanos(graph, STAGES[k]));
+                }
+                long start = System.nanoTime();
+                fifoDistances(s, distance);
+                fifoDistances = Math.min(fifoDistances, System.nanoTime() - start);
+                start = System.nanoTime();
+                fifoMoisture(s, moisture);
+                fifoMoisture = Math.min(fifoMoisture, System.nanoTime() - start);
+            }
+
+            boolean same = true;
+            for (int c = 0; c < s.size(); c++) {
+                same &= Double.compare(distance[c], s.distance(c)) == 0;
+                same &= Double.compare(moisture[c], s.spreadMoisture(c)) == 0;
+            }
+            allSame &= same;
+            System.out.printf(" %20.2f %20.2f %20.2f %20.2f %20.2f %8s%n", fastest[0] / 1e6, fifoDistances / 1e6,
+                    fastest[1] / 1e6, fastest[2] / 1e6, fifoMoisture / 1e6, same ? "yes" : "NO");
+        }
+        if (!allSame) {
+            System.exit(1);
+        }
+    }
+
+    private static long nanos(VoronoiGraph graph, String stage) {
+        for (StageTiming timing : graph.getStageTimings()) {
+            if (timing.name.equals(stage)) {
+                return timing.nanos;
+            }
+        }
+        throw new IllegalStateException("stage " + stage + " did not run");
+    }
+
+    // the distances as they were spread before: relaxed from the border on
+    // until nothing changes, corners queued again whenever they get closer
+    private static void fifoDistances(CornerStore s, double[] distance) {
+        Adjacency adjacent = s.adjacent();
+        Fifo queue = new Fifo();
+        for (int c = 0; c < s.size(); c++) {
+            if (s.isBorder(c)) {
+                distance[c] = 0;
+                queue.add(c);
+            } else {
+                distance[c] = Double.MAX_VALUE;
+            }
+        }
+        while (!queue.isEmpty()) {
+            int c = queue.pop();
+            for (int k = 0; k < adjacent.size(c); k++) {
+                int a = adjacent.get(c, k);
+                double newDistance = 0.01 + distance[c];
+                if (!s.isIslandWater(c) && !s.isIslandWater(a)) {
+                    newDistance += 1;
+                }
+                if (newDistance < distance[a]) {
+                    distance[a] = newDistance;
+                    queue.add(a);
+                }
+            }
+        }
+    }
+
+    // the moisture as it was spread before, in the same way
+    private static void fifoMoisture(CornerStore s, double[] moisture) {
+        Adjacency adjacent = s.adjacent();
+        Fifo queue = new Fifo();
+        for (int c = 0; c < s.size(); c++) {
+            if ((s.isWater(c) || s.river(c) > 0) && !s.isOcean(c)) {
+                moisture[c] = s.river(c) > 0 ? Math.min(3.0, (0.2 * s.river(c))) : 1.0;
+                queue.add(c);
+            } else {
+                moisture[c] = 0.0;
+            }
+        }
+        while (!queue.isEmpty()) {
+            int c = queue.pop();
+            for (int k = 0; k < adjacent.size(c); k++) {
+                int a = adjacent.get(c, k);
+                double newM = .9 * moisture[c];
+                if (newM > moisture[a]) {
+                    moisture[a] = newM;
+                    queue.add(a);
+                }
+            }
+        }
+
+        // Salt water
+        for (int c = 0; c < s.size(); c++) {
+            if (s.isOcean(c) || s.isCoast(c)) {
+                moisture[c] = 1.0;
+            }
+        }
+    }
+
+    // a queue of ints that moves what is left to the front when it runs full
+    private static final class Fifo {
+
+        private int[] items = new int[1024];
+        private int head, tail;
+
+        void add(int item) {
+            if (tail == items.length) {
+                int size = tail - head;
+                if (size > items.length / 2) {
+                    items = Arrays.copyOf(items, 2 * items.length);
+                }
+                System.arraycopy(items, head, items, 0, size);
+                head = 0;
+                tail = size;
+            }
+            items[tail++] = item;
+        }
+
+        int pop() {
+            return items[head++];
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+    }
+}
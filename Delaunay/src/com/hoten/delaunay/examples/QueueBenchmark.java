@@ -0,0 +1,86 @@
+package com.hoten.delaunay.examples;
+
+import com.hoten.delaunay.geom.Point;
+import com.hoten.delaunay.geom.Rectangle;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.Voronoi;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Times the Fortune sweep with the bucketed event queue against the binary
+ * heap, on uniformly random and on clustered sites.
+ * <p>
+ * The largest sizes need a big heap, e.g. -Xmx6g.
+ */
+public class QueueBenchmark {
+
+    public static void main(String[] args) {
+        int[] sizes = {5000, 15000, 45000, 150000, 500000, 1000000};
+        int bounds = 1000;
+        int repetitions = 3;
+
+        // warm up the JIT on a mid-sized diagram
+        for (int i = 0; i < 3; i++) {
+            ArrayList<Point> points = uniformSites(20000, bounds, new Random(i));
+            timeSweep(points, bounds, Voronoi.QueueType.BUCKETS);
+            timeSweep(points, bounds, Voronoi.QueueType.BINARY_HEAP);
+        }
+
+        System.out.printf("%-10s %10s %14s %14s%n", "sites", "layout", "buckets [ms]", "heap [ms]");
+        for (int size : sizes) {
+            for (boolean clustered : new boolean[]{false, true}) {
+                Random r = new Random(size);
+                ArrayList<Point> points = clustered ? clusteredSites(size, bounds, r) : uniformSites(size, bounds, r);
+                long buckets = Long.MAX_VALUE;
+                long heap = Long.MAX_VALUE;
+                for (int i = 0; i < repetitions; i++) {
+                    buckets = Math.min(buckets, timeSweep(points, bounds, Voronoi.QueueType.BUCKETS));
+                    heap = Math.min(heap, timeSweep(points, bounds, Voronoi.QueueType.BINARY_HEAP));
+                }
+                System.out.printf("%-10d %10s %14.1f %14.1f%n", size, clustered ? "clustered" : "uniform", buckets / 1e6, heap / 1e6);
+            }
+        }
+    }
+
+    private static long timeSweep(ArrayList<Point> points, int bounds, Voronoi.QueueType queueType) {
+        long start = System.nanoTime();
+        new Voronoi(points, null, new Rectangle(0, 0, bounds, bounds), queueType);
+        return System.nanoTime() - start;
+    }
+
+    private static ArrayList<Point> uniformSites(int numSites, int bounds, Random r) {
+        ArrayList<Point> points = new ArrayList<>(numSites);
+        for (int i = 0; i < numSites; i++) {
+            points.add(new Point(r.nextDouble() * bounds, r.nextDouble() * bounds));
+        }
+        return points;
+    }
+
+    // a handful of dense gaussian blobs on top of a sparse uniform background
+    private static ArrayList<Point> clusteredSites(int numSites, int bounds, Random r) {
+        int numClusters = 8;
+        double[] cx = new double[numClusters];
+        double[] cy = new double[numClusters];
+        for (int i = 0; i < numClusters; i++) {
+            cx[i] = (0.2 + 0.6 * r.nextDouble()) * bounds;
+            cy[i] = (0.2 + 0.6 * r.nextDouble()) * bounds;
+        }
+        ArrayList<Point> points = new ArrayList<>(numSites);
+        while (points.size() < numSites) {
+            double x, y;
+            if (r.nextInt(10) == 0) {
+                x = r.nextDouble() * bounds;
+                y = r.nextDouble() * bounds;
+            } else {
+                int cluster = r.nextInt(numClusters);
+                x = cx[cluster] + r.nextGaussian() * bounds * 0.03;
+                y = cy[cluster] + r.nextGaussian() * bounds * 0.03;
+            }
+            if (x >= 0 && x <= bounds && y >= 0 && y <= bounds) {
+                points.add(new Point(x, y));
+            }
+        }
+        return points;
+    }
+}
@@ -0,0 +1,135 @@
+package com.hoten.delaunay.examples;
+
+import com.hoten.delaunay.voronoi.Center;
+import com.hoten.delaunay.voronoi.Corner;
+import com.hoten.delaunay.voronoi.Edge;
+import com.hoten.delaunay.voronoi.VoronoiGraph;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.PoissonDiskSampler;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.Voronoi;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds every graph twice from the same seed and checks that both hash to
+ * the same bytes: every Center, Corner and Edge with its position, terrain
+ * and links. The hashes are printed so that runs in different JVMs can be
+ * compared too.
+ */
+public class SeedReproducibility {
+
+    public static void main(String[] args) {
+        int bounds = 1000;
+        int numSites = 8000;
+        boolean allSame = true;
+        for (long seed : new long[]{1, 42, 177470702879216L}) {
+            for (boolean poisson : new boolean[]{false, true}) {
+                String first = hash(createGraph(bounds, numSites, seed, poisson));
+                String second = hash(createGraph(bounds, numSites, seed, poisson));
+                allSame &= first.equals(second);
+                System.out.printf("seed %-16d %-8s %s %s%n", seed, poisson ? "poisson" : "uniform", first,
+                        first.equals(second) ? "same" : "DIFFERENT " + second);
+            }
+        }
+        System.out.println(allSame ? "all graphs reproduced" : "some graphs were not reproduced");
+        if (!allSame) {
+            System.exit(1);
+        }
+    }
+
+    private static VoronoiGraph createGraph(int bounds, int numSites, long seed, boolean poisson) {
+        if (!poisson) {
+            return TestDriver.createVoronoiGraph(bounds, numSites, 4, seed);
+        }
+        Random r = new Random(seed);
+        return new TestGraphImpl(new Voronoi(new PoissonDiskSampler(), numSites, bounds, bounds, r, null), 0, r);
+    }
+
+    /**
+     * @return hex SHA-256 over the whole graph, independent of object identity
+     */
+    public static String hash(VoronoiGraph graph) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        for (Center c : graph.centers) {
+            buffer = ensure(buffer, digest, 64 + 4 * (c.neighbors.size() + c.corners.size() + c.borders.size()));
+            buffer.putInt(c.index).putDouble(c.loc.x).putDouble(c.loc.y)
+                    .putDouble(c.elevation).putDouble(c.moisture)
+                    .putInt(c.biome == null ? -1 : c.biome.ordinal())
+                    .put(flags(c.border, c.ocean, c.water, c.coast));
+            putCenters(buffer, c.neighbors);
+            putCorners(buffer, c.corners);
+            putEdges(buffer, c.borders);
+        }
+        for (Corner c : graph.corners) {
+            buffer = ensure(buffer, digest, 64 + 4 * (c.touches.size() + c.adjacent.size() + c.protrudes.size()));
+            buffer.putInt(c.index).putDouble(c.loc.x).putDouble(c.loc.y)
+                    .putDouble(c.elevation).putDouble(c.moisture).putInt(c.river)
+                    .putInt(c.downslope == null ? -1 : c.downslope.index)
+                    .put(flags(c.border, c.ocean, c.water, c.coast));
+            putCenters(buffer, c.touches);
+            putCorners(buffer, c.adjacent);
+            putEdges(buffer, c.protrudes);
+        }
+        for (Edge e : graph.edges) {
+            buffer = ensure(buffer, digest, 24);
+            buffer.putInt(e.index).putInt(e.river)
+                    .putInt(e.d0 == null ? -1 : e.d0.index).putInt(e.d1 == null ? -1 : e.d1.index)
+                    .putInt(e.v0 == null ? -1 : e.v0.index).putInt(e.v1 == null ? -1 : e.v1.index);
+        }
+        buffer.flip();
+        digest.update(buffer);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    // hands the buffer to the digest once the next record may not fit
+    private static ByteBuffer ensure(ByteBuffer buffer, MessageDigest digest, int bytes) {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        return bytes <= buffer.capacity() ? buffer : ByteBuffer.allocate(bytes);
+    }
+
+    private static byte flags(boolean... values) {
+        int flags = 0;
+        for (int i = 0; i < values.length; i++) {
+            flags |= values[i] ? 1 << i : 0;
+        }
+        return (byte) flags;
+    }
+
+    private static void putCenters(ByteBuffer buffer, List<Center> centers) {
+        buffer.putInt(centers.size());
+        for (Center c : centers) {
+            buffer.putInt(c.index);
+        }
+    }
+
+    private static void putCorners(ByteBuffer buffer, List<Corner> corners) {
+        buffer.putInt(corners.size());
+        for (Corner c : corners) {
+            buffer.putInt(c.index);
+        }
+    }
+
+    private static void putEdges(ByteBuffer buffer, List<Edge> edges) {
+        buffer.putInt(edges.size());
+        for (Edge e : edges) {
+            buffer.putInt(e.index);
+        }
+    }
+}
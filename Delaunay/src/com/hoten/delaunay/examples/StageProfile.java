@@ -0,0 +1,62 @@
+package com.hoten.delaunay.examples;
+
+import com.hoten.delaunay.voronoi.StageTiming;
+import com.hoten.delaunay.voronoi.VoronoiGraph;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.PoissonDiskSampler;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.Voronoi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Prints where generating a graph spends its time and memory, stage by
+ * stage, after a few graphs to warm up the JIT. A stage's time includes
+ * whatever garbage collection happened to run during it. Pass the number of sites,
+ * 150000 by default; that size needs a big heap, e.g. -Xmx3g. Then the same
+ * for running the graph again from the moisture on, as after a change to it.
+ */
+public class StageProfile {
+
+    public static void main(String[] args) {
+        int numSites = args.length > 0 ? Integer.parseInt(args[0]) : 150000;
+        int bounds = 1000;
+        int runs = 5;
+
+        Voronoi v = new Voronoi(new PoissonDiskSampler(), numSites, bounds, bounds, new Random(1), null);
+        List<StageTiming> timings = null;
+        long total = Long.MAX_VALUE;
+        VoronoiGraph graph = null;
+        for (int i = 0; i < runs; i++) {
+            graph = new TestGraphImpl(v, 0, new Random(2));
+            long sum = graph.getStageTimings().stream().mapToLong(t -> t.nanos).sum();
+            if (sum < total) {
+                total = sum;
+                timings = new ArrayList<>(graph.getStageTimings());
+            }
+        }
+
+        System.out.printf("%d sites, fastest of %d runs on %d threads%n", v.get_siteCount(), runs,
+                java.util.concurrent.ForkJoinPool.getCommonPoolParallelism());
+        print(timings, total);
+
+        total = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            graph.invalidate("spread moisture");
+            graph.update();
+            long sum = graph.getStageTimings().stream().mapToLong(t -> t.nanos).sum();
+            if (sum < total) {
+                total = sum;
+                timings = new ArrayList<>(graph.getStageTimings());
+            }
+        }
+
+        System.out.printf("%nagain from the moisture on, fastest of %d runs%n", runs);
+        print(timings, total);
+    }
+
+    private static void print(List<StageTiming> timings, long total) {
+        timings.forEach(System.out::println);
+        System.out.printf("%-27s %9.1f ms%n", "total", total / 1e6);
+    }
+}
@@ -4,8 +4,10 @@ import ch.fhnw.ether.scene.mesh.material.ColorMaterial;
 import com.hoten.delaunay.voronoi.Center;
 import com.hoten.delaunay.voronoi.VoronoiGraph;
 import com.hoten.delaunay.voronoi.nodename.as3delaunay.Voronoi;
+import controller.generation.TerrainCircle;
 
 import java.awt.*;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -22,7 +24,11 @@ import java.util.Random;
 public class TestGraphImpl extends VoronoiGraph {
 
     public TestGraphImpl(Voronoi v, int numLloydRelaxations, Random r) {
-        super(v, numLloydRelaxations, r,Generation_Type.RANDOM,null);
+        this(v, numLloydRelaxations, r, Generation_Type.RANDOM, null);
+    }
+
+    public TestGraphImpl(Voronoi v, int numLloydRelaxations, Random r, Generation_Type generationType, List<TerrainCircle> circles) {
+        super(v, numLloydRelaxations, r, generationType, circles);
         OCEAN = ColorData.OCEAN.color;
         LAKE = ColorData.LAKE.color;
         BEACH = ColorData.BEACH.color;
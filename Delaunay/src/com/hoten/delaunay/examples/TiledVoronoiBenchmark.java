@@ -0,0 +1,114 @@
+package com.hoten.delaunay.examples;
+
+import com.hoten.delaunay.geom.Point;
+import com.hoten.delaunay.geom.Rectangle;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.FlatDiagram;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.TiledVoronoi;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.Voronoi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Times the single Fortune sweep against the strip-wise TiledVoronoi and
+ * checks that both build the same diagram: the same sites, the same edges
+ * between the same vertices and the same regions.
+ * <p>
+ * The largest size needs a big heap, e.g. -Xmx6g.
+ */
+public class TiledVoronoiBenchmark {
+
+    public static void main(String[] args) {
+        int[] sizes = {20000, 100000, 300000, 1000000};
+        int bounds = 1000;
+
+        // warm up the JIT on a mid-sized diagram
+        for (int i = 0; i < 3; i++) {
+            ArrayList<Point> points = uniformSites(50000, bounds, new Random(i));
+            new Voronoi(points, null, new Rectangle(0, 0, bounds, bounds)).flatDiagram();
+            new TiledVoronoi(points, new Rectangle(0, 0, bounds, bounds));
+        }
+
+        System.out.printf("%-10s %8s %8s %14s %14s %10s%n", "sites", "strips", "sweeps", "single [ms]", "tiled [ms]", "same");
+        for (int size : sizes) {
+            ArrayList<Point> points = uniformSites(size, bounds, new Random(size));
+            Rectangle plotBounds = new Rectangle(0, 0, bounds, bounds);
+
+            long start = System.nanoTime();
+            FlatDiagram single = new Voronoi(points, null, plotBounds).flatDiagram();
+            long singleTime = System.nanoTime() - start;
+
+            for (int strips : new int[]{4, 16}) {
+                start = System.nanoTime();
+                TiledVoronoi tiled = new TiledVoronoi(points, plotBounds, strips);
+                long tiledTime = System.nanoTime() - start;
+                System.out.printf("%-10d %8d %8d %14.1f %14.1f %10s%n", size, strips, tiled.get_sweeps(),
+                        singleTime / 1e6, tiledTime / 1e6, sameDiagram(single, tiled.flatDiagram()));
+            }
+        }
+    }
+
+    /**
+     * Compares two diagrams regardless of the order of their edges and
+     * vertices and of where each region polygon starts.
+     */
+    static boolean sameDiagram(FlatDiagram a, FlatDiagram b) {
+        if (a.numSites != b.numSites || a.numEdges != b.numEdges || a.numVertices != b.numVertices
+                || a.numEdgeVertices != b.numEdgeVertices
+                || !Arrays.equals(a.siteX, b.siteX) || !Arrays.equals(a.siteY, b.siteY)) {
+            return false;
+        }
+        if (!edgeEnds(a).equals(edgeEnds(b))) {
+            return false;
+        }
+        for (int i = 0; i < a.numSites; i++) {
+            if (!region(a, i).equals(region(b, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the ends of every edge by its pair of sites
+    private static HashMap<Long, String> edgeEnds(FlatDiagram d) {
+        HashMap<Long, String> ends = new HashMap<>(2 * d.numEdges);
+        for (int i = 0; i < d.numEdges; i++) {
+            long key = (long) Math.min(d.edgeSite0[i], d.edgeSite1[i]) * d.numSites + Math.max(d.edgeSite0[i], d.edgeSite1[i]);
+            String end0 = vertex(d, d.edgeVertex0[i]), end1 = vertex(d, d.edgeVertex1[i]);
+            ends.put(key, end0.compareTo(end1) <= 0 ? end0 + end1 : end1 + end0);
+        }
+        return ends;
+    }
+
+    // the region's corners, starting at the smallest one
+    private static String region(FlatDiagram d, int site) {
+        int size = d.regionSize(site);
+        String[] corners = new String[size];
+        int first = 0;
+        for (int j = 0; j < size; j++) {
+            corners[j] = vertex(d, d.regionVertices[d.regionOffsets[site] + j]);
+            if (corners[j].compareTo(corners[first]) < 0) {
+                first = j;
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < size; j++) {
+            sb.append(corners[(first + j) % size]);
+        }
+        return sb.toString();
+    }
+
+    private static String vertex(FlatDiagram d, int id) {
+        return id < 0 ? "()" : "(" + Double.doubleToLongBits(d.vertexX[id]) + "," + Double.doubleToLongBits(d.vertexY[id]) + ")";
+    }
+
+    private static ArrayList<Point> uniformSites(int numSites, int bounds, Random r) {
+        ArrayList<Point> points = new ArrayList<>(numSites);
+        for (int i = 0; i < numSites; i++) {
+            points.add(new Point(r.nextDouble() * bounds, r.nextDouble() * bounds));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,126 @@
+package com.hoten.delaunay.voronoi;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Lists of indices per element, packed into two arrays: the links of element
+ * i are targets[offsets[i]] up to targets[offsets[i + 1]], in the order of
+ * the lists they were built from.
+ */
+public final class Adjacency {
+
+    private final int[] offsets;
+    private final int[] targets;
+
+    Adjacency(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    static <O, T> Adjacency of(List<O> owners, Function<O, ? extends List<T>> links, ToIntFunction<T> index) {
+        int[] offsets = new int[owners.size() + 1];
+        for (int i = 0; i < owners.size(); i++) {
+            offsets[i + 1] = offsets[i] + links.apply(owners.get(i)).size();
+        }
+        int[] targets = new int[offsets[owners.size()]];
+        for (int i = 0; i < owners.size(); i++) {
+            int k = offsets[i];
+            for (T link : links.apply(owners.get(i))) {
+                targets[k++] = index.applyAsInt(link);
+            }
+        }
+        return new Adjacency(offsets, targets);
+    }
+
+    /**
+     * Two passes over the entries: count the rows, then fill them.
+     *
+     * @return for each of numRows rows the entries e with a[e] or b[e] equal
+     * to the row, ascending; -1 in a or b belongs to no row
+     */
+    static Adjacency incidence(int numRows, int[] a, int[] b) {
+        int[] offsets = new int[numRows + 1];
+        for (int e = 0; e < a.length; e++) {
+            if (a[e] >= 0) {
+                offsets[a[e] + 1]++;
+            }
+            if (b[e] >= 0) {
+                offsets[b[e] + 1]++;
+            }
+        }
+        for (int i = 0; i < numRows; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] targets = new int[offsets[numRows]];
+        int[] next = Arrays.copyOf(offsets, numRows);
+        for (int e = 0; e < a.length; e++) {
+            if (a[e] >= 0) {
+                targets[next[a[e]]++] = e;
+            }
+            if (b[e] >= 0) {
+                targets[next[b[e]]++] = e;
+            }
+        }
+        return new Adjacency(offsets, targets);
+    }
+
+    /**
+     * @return for each row of entries the distinct values of a[e] and b[e]
+     * over its entries e, in the order they first occur, without -1 and
+     * without the row itself if skipSelf
+     */
+    static Adjacency ends(Adjacency entries, int[] a, int[] b, boolean skipSelf, int numValues) {
+        int numRows = entries.offsets.length - 1;
+        int[] offsets = new int[numRows + 1];
+        int[] targets = new int[2 * entries.targets.length];
+        // the last row each value was added to
+        int[] added = new int[numValues];
+        Arrays.fill(added, -1);
+        int size = 0;
+        for (int i = 0; i < numRows; i++) {
+            if (skipSelf) {
+                added[i] = i;
+            }
+            for (int k = entries.offsets[i]; k < entries.offsets[i + 1]; k++) {
+                int e = entries.targets[k];
+                if (a[e] >= 0 && added[a[e]] != i) {
+                    added[a[e]] = i;
+                    targets[size++] = a[e];
+                }
+                if (b[e] >= 0 && added[b[e]] != i) {
+                    added[b[e]] = i;
+                    targets[size++] = b[e];
+                }
+            }
+            offsets[i + 1] = size;
+        }
+        return new Adjacency(offsets, Arrays.copyOf(targets, size));
+    }
+
+    public int size(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    /**
+     * @return the k-th link of element i
+     */
+    public int get(int i, int k) {
+        return targets[offsets[i] + k];
+    }
+
+    // for loops over the links in this package: offsets[i] until offsets[i + 1]
+    int start(int i) {
+        return offsets[i];
+    }
+
+    int end(int i) {
+        return offsets[i + 1];
+    }
+
+    int target(int k) {
+        return targets[k];
+    }
+}
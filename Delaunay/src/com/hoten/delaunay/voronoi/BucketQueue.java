@@ -0,0 +1,46 @@
+package com.hoten.delaunay.voronoi;
+
+/**
+ * A priority queue of ints with int keys, for shortest paths whose steps
+ * cost at most maxStep: a ring of more than maxStep buckets, one per key from
+ * the smallest key on (Dial's algorithm). A key added must lie between
+ * {@link #key()} and key() + maxStep. Items with equal keys come out in the
+ * order they went in.
+ */
+final class BucketQueue {
+
+    private final IntQueue[] buckets;
+    private int key, size;
+
+    BucketQueue(int maxStep) {
+        buckets = new IntQueue[Integer.highestOneBit(maxStep) << 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new IntQueue();
+        }
+    }
+
+    void add(int item, int key) {
+        buckets[key & (buckets.length - 1)].add(item);
+        size++;
+    }
+
+    /**
+     * @return an item with the smallest key, which {@link #key()} returns
+     * from then on
+     */
+    int pop() {
+        while (buckets[key & (buckets.length - 1)].isEmpty()) {
+            key++;
+        }
+        size--;
+        return buckets[key & (buckets.length - 1)].pop();
+    }
+
+    int key() {
+        return key;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,136 @@
+package com.hoten.delaunay.voronoi;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The centers of a graph as parallel arrays, indexed like
+ * {@link VoronoiGraph#centers}: one primitive array per attribute, the
+ * flags packed into a byte and the links as {@link Adjacency}. The graph
+ * passes work on these arrays; outside of this package they are read-only.
+ */
+public final class CenterStore {
+
+    final static byte BORDER = 1, OCEAN = 2, WATER = 4, COAST = 8;
+
+    final int size;
+    final double[] x, y;
+    final double[] elevation;
+    final double[] moisture;
+    final byte[] flags;
+    // ordinals into biomes, -1 before the biomes are assigned
+    final int[] biome;
+    Enum<?>[] biomes;
+    final Adjacency neighbors, corners, borders;
+
+    // a new graph, before any pass ran on it
+    CenterStore(double[] x, double[] y, Adjacency neighbors, Adjacency corners, Adjacency borders) {
+        size = x.length;
+        this.x = x;
+        this.y = y;
+        elevation = new double[size];
+        moisture = new double[size];
+        flags = new byte[size];
+        biome = new int[size];
+        Arrays.fill(biome, -1);
+        this.neighbors = neighbors;
+        this.corners = corners;
+        this.borders = borders;
+    }
+
+    CenterStore(List<Center> centers) {
+        size = centers.size();
+        x = new double[size];
+        y = new double[size];
+        elevation = new double[size];
+        moisture = new double[size];
+        flags = new byte[size];
+        biome = new int[size];
+        for (int i = 0; i < size; i++) {
+            Center c = centers.get(i);
+            x[i] = c.loc.x;
+            y[i] = c.loc.y;
+            elevation[i] = c.elevation;
+            moisture[i] = c.moisture;
+            set(i, BORDER, c.border);
+            set(i, OCEAN, c.ocean);
+            set(i, WATER, c.water);
+            set(i, COAST, c.coast);
+            setBiome(i, c.biome);
+        }
+        neighbors = Adjacency.of(centers, c -> c.neighbors, c -> c.index);
+        this.corners = Adjacency.of(centers, c -> c.corners, c -> c.index);
+        borders = Adjacency.of(centers, c -> c.borders, e -> e.index);
+    }
+
+    boolean is(int i, byte flag) {
+        return (flags[i] & flag) != 0;
+    }
+
+    void set(int i, byte flag, boolean value) {
+        flags[i] = (byte) (value ? flags[i] | flag : flags[i] & ~flag);
+    }
+
+    void setBiome(int i, Enum<?> value) {
+        if (value == null) {
+            biome[i] = -1;
+            return;
+        }
+        if (biomes == null) {
+            biomes = value.getDeclaringClass().getEnumConstants();
+        }
+        biome[i] = value.ordinal();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double x(int i) {
+        return x[i];
+    }
+
+    public double y(int i) {
+        return y[i];
+    }
+
+    public double elevation(int i) {
+        return elevation[i];
+    }
+
+    public double moisture(int i) {
+        return moisture[i];
+    }
+
+    public boolean isBorder(int i) {
+        return is(i, BORDER);
+    }
+
+    public boolean isOcean(int i) {
+        return is(i, OCEAN);
+    }
+
+    public boolean isWater(int i) {
+        return is(i, WATER);
+    }
+
+    public boolean isCoast(int i) {
+        return is(i, COAST);
+    }
+
+    public Enum<?> biome(int i) {
+        return biome[i] < 0 ? null : biomes[biome[i]];
+    }
+
+    public Adjacency neighbors() {
+        return neighbors;
+    }
+
+    public Adjacency corners() {
+        return corners;
+    }
+
+    public Adjacency borders() {
+        return borders;
+    }
+}
@@ -0,0 +1,139 @@
+package com.hoten.delaunay.voronoi;
+
+import com.hoten.delaunay.geom.Rectangle;
+import controller.generation.TerrainCircle;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The drawn circles sorted into a grid over the map, so that whether a point
+ * lies in any of them only looks at its cell: cells within a circle or
+ * outside of all of them answer right away, the others test the few circles
+ * that cross them.
+ */
+final class CircleGrid {
+
+    private static final byte OUTSIDE = 0, INSIDE = 1, CROSSED = 2;
+
+    private final Rectangle bounds;
+    private final int cells;  // per side
+    private final double cellWidth, cellHeight;
+    private final byte[] state;
+    // the circles crossing each cell, as in Adjacency
+    private final int[] offsets, crossing;
+    private final double[] x, y, radiusSquared;
+
+    CircleGrid(List<TerrainCircle> circles, Rectangle bounds, int cells) {
+        this.bounds = bounds;
+        this.cells = cells;
+        cellWidth = bounds.width / cells;
+        cellHeight = bounds.height / cells;
+        state = new byte[cells * cells];
+        offsets = new int[cells * cells + 1];
+        x = new double[circles.size()];
+        y = new double[circles.size()];
+        radiusSquared = new double[circles.size()];
+        for (int i = 0; i < x.length; i++) {
+            TerrainCircle circle = circles.get(i);
+            x[i] = circle.m.x;
+            y[i] = circle.m.y;
+            radiusSquared[i] = Math.pow(circle.r, 2);
+        }
+
+        // count, then fill, the circles crossing each cell; a cell that one
+        // circle covers needs none of them
+        int[][] crossed = new int[x.length][];
+        for (int i = 0; i < x.length; i++) {
+            crossed[i] = crossedCells(i);
+            for (int cell : crossed[i]) {
+                offsets[cell + 1]++;
+            }
+        }
+        for (int cell = 0; cell < state.length; cell++) {
+            if (state[cell] == INSIDE) {
+                offsets[cell + 1] = 0;
+            } else if (offsets[cell + 1] > 0) {
+                state[cell] = CROSSED;
+            }
+            offsets[cell + 1] += offsets[cell];
+        }
+        crossing = new int[offsets[state.length]];
+        int[] next = offsets.clone();
+        for (int i = 0; i < x.length; i++) {
+            for (int cell : crossed[i]) {
+                if (state[cell] == CROSSED) {
+                    crossing[next[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    // the cells within the circle's bounding box that it crosses but does not
+    // cover; the covered ones get marked INSIDE on the way
+    private int[] crossedCells(int i) {
+        double r = Math.sqrt(radiusSquared[i]);
+        int i0 = column(x[i] - r), i1 = column(x[i] + r);
+        int j0 = row(y[i] - r), j1 = row(y[i] + r);
+        int[] found = new int[(i1 - i0 + 1) * (j1 - j0 + 1)];
+        int size = 0;
+        for (int j = j0; j <= j1; j++) {
+            double top = bounds.y + j * cellHeight;
+            for (int column = i0; column <= i1; column++) {
+                double left = bounds.x + column * cellWidth;
+                // the nearest and the farthest point of the cell from the center
+                double nearX = Math.max(left, Math.min(x[i], left + cellWidth)) - x[i];
+                double nearY = Math.max(top, Math.min(y[i], top + cellHeight)) - y[i];
+                if (nearX * nearX + nearY * nearY >= radiusSquared[i]) {
+                    continue;
+                }
+                double farX = Math.max(Math.abs(left - x[i]), Math.abs(left + cellWidth - x[i]));
+                double farY = Math.max(Math.abs(top - y[i]), Math.abs(top + cellHeight - y[i]));
+                // with a margin, so that rounding cannot tell a point of the
+                // cell to lie outside after all
+                if (farX * farX + farY * farY < radiusSquared[i] * (1 - 1e-9)) {
+                    state[j * cells + column] = INSIDE;
+                } else {
+                    found[size++] = j * cells + column;
+                }
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    private int column(double px) {
+        return Math.min(Math.max((int) Math.floor((px - bounds.x) / cellWidth), 0), cells - 1);
+    }
+
+    private int row(double py) {
+        return Math.min(Math.max((int) Math.floor((py - bounds.y) / cellHeight), 0), cells - 1);
+    }
+
+    /**
+     * @return whether the point lies strictly within one of the circles
+     */
+    boolean contains(double px, double py) {
+        if (!bounds.inBounds(px, py)) {
+            for (int i = 0; i < x.length; i++) {
+                if (inCircle(i, px, py)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int cell = row(py) * cells + column(px);
+        if (state[cell] != CROSSED) {
+            return state[cell] == INSIDE;
+        }
+        for (int k = offsets[cell]; k < offsets[cell + 1]; k++) {
+            if (inCircle(crossing[k], px, py)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean inCircle(int i, double px, double py) {
+        return Math.pow(px - x[i], 2) + Math.pow(py - y[i], 2) < radiusSquared[i];
+    }
+}
@@ -20,6 +20,11 @@ public class Corner {
     public double elevation;
     public boolean water, ocean, coast;
     public Corner downslope;
+    // where the downslopes lead: a coast corner, a local minimum or the
+    // lowest index of a loop over flat ground; ocean corners are their own
+    public Corner watershed;
+    // the corners whose watershed this corner is, 0 for all others
+    public int watershedSize;
     public int river;
     public double moisture;
 }
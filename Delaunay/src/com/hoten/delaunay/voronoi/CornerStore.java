@@ -0,0 +1,208 @@
+package com.hoten.delaunay.voronoi;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The corners of a graph as parallel arrays, indexed like
+ * {@link VoronoiGraph#corners}. See {@link CenterStore}.
+ */
+public final class CornerStore {
+
+    final static byte BORDER = 1, OCEAN = 2, WATER = 4, COAST = 8;
+    // water by the island shape alone, before oceans and lakes are known
+    final static byte ISLAND_WATER = 16;
+
+    final int size;
+    final double[] x, y;
+    final double[] elevation;
+    final double[] moisture;
+    // what elevation and moisture are ranked from
+    final double[] distance;
+    final double[] spreadMoisture;
+    final byte[] flags;
+    final int[] river;
+    // the corner itself at a local minimum, -1 before the downslopes are known
+    final int[] downslope;
+    // the edge to the downslope, -1 without one
+    final int[] downslopeEdge;
+    // see Corner; -1 before the watersheds are known
+    final int[] watershed;
+    final int[] watershedSize;
+    final Adjacency touches, adjacent, protrudes;
+
+    // a new graph, before any pass ran on it
+    CornerStore(double[] x, double[] y, Adjacency touches, Adjacency adjacent, Adjacency protrudes) {
+        size = x.length;
+        this.x = x;
+        this.y = y;
+        elevation = new double[size];
+        moisture = new double[size];
+        distance = new double[size];
+        spreadMoisture = new double[size];
+        flags = new byte[size];
+        river = new int[size];
+        downslope = new int[size];
+        Arrays.fill(downslope, -1);
+        downslopeEdge = new int[size];
+        Arrays.fill(downslopeEdge, -1);
+        watershed = new int[size];
+        Arrays.fill(watershed, -1);
+        watershedSize = new int[size];
+        this.touches = touches;
+        this.adjacent = adjacent;
+        this.protrudes = protrudes;
+    }
+
+    CornerStore(List<Corner> corners) {
+        size = corners.size();
+        x = new double[size];
+        y = new double[size];
+        elevation = new double[size];
+        moisture = new double[size];
+        distance = new double[size];
+        spreadMoisture = new double[size];
+        flags = new byte[size];
+        river = new int[size];
+        downslope = new int[size];
+        downslopeEdge = new int[size];
+        watershed = new int[size];
+        watershedSize = new int[size];
+        for (int i = 0; i < size; i++) {
+            Corner c = corners.get(i);
+            x[i] = c.loc.x;
+            y[i] = c.loc.y;
+            elevation[i] = c.elevation;
+            moisture[i] = c.moisture;
+            set(i, BORDER, c.border);
+            set(i, OCEAN, c.ocean);
+            set(i, WATER, c.water);
+            set(i, COAST, c.coast);
+            river[i] = c.river;
+            downslope[i] = c.downslope == null ? -1 : c.downslope.index;
+            watershed[i] = c.watershed == null ? -1 : c.watershed.index;
+            watershedSize[i] = c.watershedSize;
+            downslopeEdge[i] = -1;
+            if (c.downslope != null && c.downslope != c) {
+                for (Edge e : c.protrudes) {
+                    if (e.v0 == c.downslope || e.v1 == c.downslope) {
+                        downslopeEdge[i] = e.index;
+                        break;
+                    }
+                }
+            }
+        }
+        touches = Adjacency.of(corners, c -> c.touches, c -> c.index);
+        adjacent = Adjacency.of(corners, c -> c.adjacent, c -> c.index);
+        protrudes = Adjacency.of(corners, c -> c.protrudes, e -> e.index);
+    }
+
+    // the first edge from corner i to corner j, -1 without one
+    int edgeTo(int i, int j, EdgeStore edges) {
+        for (int k = protrudes.start(i); k < protrudes.end(i); k++) {
+            int e = protrudes.target(k);
+            if (edges.v0[e] == j || edges.v1[e] == j) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    boolean is(int i, byte flag) {
+        return (flags[i] & flag) != 0;
+    }
+
+    void set(int i, byte flag, boolean value) {
+        flags[i] = (byte) (value ? flags[i] | flag : flags[i] & ~flag);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double x(int i) {
+        return x[i];
+    }
+
+    public double y(int i) {
+        return y[i];
+    }
+
+    public double elevation(int i) {
+        return elevation[i];
+    }
+
+    public double moisture(int i) {
+        return moisture[i];
+    }
+
+    /**
+     * @return the distance from the border that the elevation is ranked by
+     */
+    public double distance(int i) {
+        return distance[i];
+    }
+
+    /**
+     * @return the moisture spread from rivers and lakes that the moisture is
+     * ranked by
+     */
+    public double spreadMoisture(int i) {
+        return spreadMoisture[i];
+    }
+
+    public boolean isBorder(int i) {
+        return is(i, BORDER);
+    }
+
+    /**
+     * @return whether the island shape alone leaves the corner under water
+     */
+    public boolean isIslandWater(int i) {
+        return is(i, ISLAND_WATER);
+    }
+
+    public boolean isOcean(int i) {
+        return is(i, OCEAN);
+    }
+
+    public boolean isWater(int i) {
+        return is(i, WATER);
+    }
+
+    public boolean isCoast(int i) {
+        return is(i, COAST);
+    }
+
+    public int river(int i) {
+        return river[i];
+    }
+
+    public int downslope(int i) {
+        return downslope[i];
+    }
+
+    public int downslopeEdge(int i) {
+        return downslopeEdge[i];
+    }
+
+    public int watershed(int i) {
+        return watershed[i];
+    }
+
+    public int watershedSize(int i) {
+        return watershedSize[i];
+    }
+
+    public Adjacency touches() {
+        return touches;
+    }
+
+    public Adjacency adjacent() {
+        return adjacent;
+    }
+
+    public Adjacency protrudes() {
+        return protrudes;
+    }
+}
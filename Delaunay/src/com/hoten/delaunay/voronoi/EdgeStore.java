@@ -0,0 +1,66 @@
+package com.hoten.delaunay.voronoi;
+
+import java.util.List;
+
+/**
+ * The edges of a graph as parallel arrays, indexed like
+ * {@link VoronoiGraph#edges}; a missing center or corner is -1. See
+ * {@link CenterStore}.
+ */
+public final class EdgeStore {
+
+    final int size;
+    final int[] d0, d1;  // Delaunay edge
+    final int[] v0, v1;  // Voronoi edge
+    final int[] river;
+
+    EdgeStore(int[] d0, int[] d1, int[] v0, int[] v1) {
+        size = d0.length;
+        this.d0 = d0;
+        this.d1 = d1;
+        this.v0 = v0;
+        this.v1 = v1;
+        river = new int[size];
+    }
+
+    EdgeStore(List<Edge> edges) {
+        size = edges.size();
+        d0 = new int[size];
+        d1 = new int[size];
+        v0 = new int[size];
+        v1 = new int[size];
+        river = new int[size];
+        for (int i = 0; i < size; i++) {
+            Edge e = edges.get(i);
+            d0[i] = e.d0 == null ? -1 : e.d0.index;
+            d1[i] = e.d1 == null ? -1 : e.d1.index;
+            v0[i] = e.v0 == null ? -1 : e.v0.index;
+            v1[i] = e.v1 == null ? -1 : e.v1.index;
+            river[i] = e.river;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int d0(int i) {
+        return d0[i];
+    }
+
+    public int d1(int i) {
+        return d1[i];
+    }
+
+    public int v0(int i) {
+        return v0[i];
+    }
+
+    public int v1(int i) {
+        return v1[i];
+    }
+
+    public int river(int i) {
+        return river[i];
+    }
+}
@@ -0,0 +1,12 @@
+package com.hoten.delaunay.voronoi;
+
+/**
+ * Decides the biome of a center from its terrain; the last stage of
+ * generating a graph.
+ *
+ * @see VoronoiGraph#setBiomeClassifier(IBiomeClassifier)
+ */
+public interface IBiomeClassifier {
+
+    Enum<?> getBiome(Center p);
+}
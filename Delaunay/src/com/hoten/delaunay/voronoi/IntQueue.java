@@ -0,0 +1,38 @@
+package com.hoten.delaunay.voronoi;
+
+/**
+ * A first in, first out queue of ints in a growing ring buffer, for the
+ * breadth first passes over the graph.
+ */
+final class IntQueue {
+
+    private int[] items = new int[64];
+    private int head, size;
+
+    void add(int item) {
+        if (size == items.length) {
+            int[] grown = new int[2 * items.length];
+            for (int i = 0; i < size; i++) {
+                grown[i] = items[(head + i) & (items.length - 1)];
+            }
+            items = grown;
+            head = 0;
+        }
+        items[(head + size++) & (items.length - 1)] = item;
+    }
+
+    int pop() {
+        int item = items[head];
+        head = (head + 1) & (items.length - 1);
+        size--;
+        return item;
+    }
+
+    int peek() {
+        return items[head];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,124 @@
+package com.hoten.delaunay.voronoi;
+
+import java.util.Random;
+
+/**
+ * Fractal Perlin noise over the unit square: octaves of gradient noise, each
+ * twice as fine and half as strong as the one before, evaluated once into a
+ * grid of floats and read back between the grid points bilinearly. Values lie
+ * around 0.5, mostly within 0 and 1.
+ */
+final class NoiseField {
+
+    private final int size;  // grid points per side
+    private final float[] values;
+
+    NoiseField(int size, int octaves, double baseFrequency, Random r) {
+        this.size = size;
+        values = new float[size * size];
+        int[] permutation = permutation(r);
+        double total = 0;
+        for (int octave = 0; octave < octaves; octave++) {
+            total += Math.pow(0.5, octave);
+        }
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                double x = (double) i / (size - 1);
+                double y = (double) j / (size - 1);
+                double sum = 0;
+                double frequency = baseFrequency;
+                double amplitude = 1;
+                for (int octave = 0; octave < octaves; octave++) {
+                    // every octave from another part of the lattice, so that
+                    // their origins do not line up
+                    sum += amplitude * noise(permutation, x * frequency + 17.3 * octave, y * frequency + 31.7 * octave);
+                    frequency *= 2;
+                    amplitude /= 2;
+                }
+                values[j * size + i] = (float) (0.5 + 0.5 * sum / total);
+            }
+        }
+    }
+
+    /**
+     * @return the noise at x and y within [0, 1], interpolated between the
+     * four grid points around it
+     */
+    double get(double x, double y) {
+        double gx = Math.min(Math.max(x, 0), 1) * (size - 1);
+        double gy = Math.min(Math.max(y, 0), 1) * (size - 1);
+        int i = Math.min((int) gx, size - 2);
+        int j = Math.min((int) gy, size - 2);
+        double fx = gx - i;
+        double fy = gy - j;
+        int k = j * size + i;
+        double top = values[k] + fx * (values[k + 1] - values[k]);
+        double bottom = values[k + size] + fx * (values[k + size + 1] - values[k + size]);
+        return top + fy * (bottom - top);
+    }
+
+    // the numbers below 256 shuffled, twice in a row
+    private static int[] permutation(Random r) {
+        int[] p = new int[512];
+        for (int i = 0; i < 256; i++) {
+            p[i] = i;
+        }
+        for (int i = 255; i > 0; i--) {
+            int k = r.nextInt(i + 1);
+            int swap = p[i];
+            p[i] = p[k];
+            p[k] = swap;
+        }
+        System.arraycopy(p, 0, p, 256, 256);
+        return p;
+    }
+
+    // Perlin's improved noise in two dimensions, roughly within -1 and 1
+    private static double noise(int[] p, double x, double y) {
+        int xi = (int) Math.floor(x);
+        int yi = (int) Math.floor(y);
+        double xf = x - xi;
+        double yf = y - yi;
+        xi &= 255;
+        yi &= 255;
+        double u = fade(xf);
+        double v = fade(yf);
+        int aa = p[p[xi] + yi];
+        int ab = p[p[xi] + yi + 1];
+        int ba = p[p[xi + 1] + yi];
+        int bb = p[p[xi + 1] + yi + 1];
+        double bottom = lerp(u, gradient(aa, xf, yf), gradient(ba, xf - 1, yf));
+        double top = lerp(u, gradient(ab, xf, yf - 1), gradient(bb, xf - 1, yf - 1));
+        return lerp(v, bottom, top);
+    }
+
+    private static double fade(double t) {
+        return t * t * t * (t * (t * 6 - 15) + 10);
+    }
+
+    private static double lerp(double t, double a, double b) {
+        return a + t * (b - a);
+    }
+
+    // one of eight directions, picked by the hash
+    private static double gradient(int hash, double x, double y) {
+        switch (hash & 7) {
+            case 0:
+                return x + y;
+            case 1:
+                return -x + y;
+            case 2:
+                return x - y;
+            case 3:
+                return -x - y;
+            case 4:
+                return x;
+            case 5:
+                return -x;
+            case 6:
+                return y;
+            default:
+                return -y;
+        }
+    }
+}
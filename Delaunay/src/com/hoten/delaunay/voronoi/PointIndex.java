@@ -0,0 +1,177 @@
+package com.hoten.delaunay.voronoi;
+
+import com.hoten.delaunay.geom.Rectangle;
+
+import java.util.Arrays;
+
+/**
+ * The points of a graph, e.g. the sites of its centers, sorted into a grid of
+ * about two points per cell over the graph's bounds. For evenly spread
+ * points a query only looks at the cells around it, however many points
+ * there are.
+ */
+public final class PointIndex {
+
+    private final double[] x, y;
+    private final Rectangle bounds;
+    private final int columns, rows;
+    private final double cellWidth, cellHeight;
+    // the points in each cell, as in Adjacency
+    private final int[] offsets, points;
+
+    PointIndex(double[] x, double[] y, Rectangle bounds) {
+        this.x = x;
+        this.y = y;
+        this.bounds = bounds;
+        int cells = Math.max(1, (int) Math.ceil(Math.sqrt(x.length / 2.0)));
+        columns = rows = cells;
+        cellWidth = bounds.width / columns;
+        cellHeight = bounds.height / rows;
+
+        offsets = new int[columns * rows + 1];
+        int[] cell = new int[x.length];
+        for (int i = 0; i < x.length; i++) {
+            cell[i] = row(y[i]) * columns + column(x[i]);
+            offsets[cell[i] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            offsets[c + 1] += offsets[c];
+        }
+        points = new int[x.length];
+        int[] next = Arrays.copyOf(offsets, columns * rows);
+        for (int i = 0; i < x.length; i++) {
+            points[next[cell[i]]++] = i;
+        }
+    }
+
+    private int column(double px) {
+        return Math.min(Math.max((int) Math.floor((px - bounds.x) / cellWidth), 0), columns - 1);
+    }
+
+    private int row(double py) {
+        return Math.min(Math.max((int) Math.floor((py - bounds.y) / cellHeight), 0), rows - 1);
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * @return the point closest to (px, py), the one with the lower index of
+     * two as close; -1 without points. For the sites of the centers that is
+     * the center whose cell contains (px, py).
+     */
+    public int nearest(double px, double py) {
+        int[] found = kNearest(px, py, 1);
+        return found.length == 0 ? -1 : found[0];
+    }
+
+    /**
+     * @return the k points closest to (px, py), closest first, or all of them
+     * if there are fewer
+     */
+    public int[] kNearest(double px, double py, int k) {
+        k = Math.min(k, x.length);
+        if (k <= 0) {
+            return new int[0];
+        }
+        // the best so far by distance, ascending
+        int[] best = new int[k];
+        double[] bestDistance = new double[k];
+        int numBest = 0;
+        int column = column(px), row = row(py);
+        // look at rings of cells around the point's cell until no cell of the
+        // next ring can hold anything closer than the k-th best
+        for (int ring = 0; ; ring++) {
+            if (numBest == k && ringDistance(px, py, column, row, ring) > bestDistance[k - 1]) {
+                break;
+            }
+            if (column - ring < 0 && row - ring < 0 && column + ring >= columns && row + ring >= rows) {
+                break;
+            }
+            for (int j = row - ring; j <= row + ring; j++) {
+                if (j < 0 || j >= rows) {
+                    continue;
+                }
+                boolean edgeRow = j == row - ring || j == row + ring;
+                for (int i = column - ring; i <= column + ring; i += edgeRow ? 1 : 2 * ring) {
+                    if (i < 0 || i >= columns) {
+                        continue;
+                    }
+                    int cell = j * columns + i;
+                    for (int p = offsets[cell]; p < offsets[cell + 1]; p++) {
+                        int point = points[p];
+                        double dx = x[point] - px, dy = y[point] - py;
+                        double d = dx * dx + dy * dy;
+                        if (numBest == k && !closer(d, point, bestDistance[k - 1], best[k - 1])) {
+                            continue;
+                        }
+                        int at = numBest < k ? numBest++ : k - 1;
+                        while (at > 0 && closer(d, point, bestDistance[at - 1], best[at - 1])) {
+                            best[at] = best[at - 1];
+                            bestDistance[at] = bestDistance[at - 1];
+                            at--;
+                        }
+                        best[at] = point;
+                        bestDistance[at] = d;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(best, numBest);
+    }
+
+    private static boolean closer(double d, int point, double otherD, int other) {
+        return d < otherD || d == otherD && point < other;
+    }
+
+    // the squared distance from (px, py) to the nearest cell of the given
+    // ring around its cell, or of any ring beyond
+    private double ringDistance(double px, double py, int column, int row, int ring) {
+        // the inner edges of the ring's left, right, top and bottom cells
+        double leftEdge = bounds.x + (column - ring + 1) * cellWidth;
+        double rightEdge = bounds.x + (column + ring) * cellWidth;
+        double topEdge = bounds.y + (row - ring + 1) * cellHeight;
+        double bottomEdge = bounds.y + (row + ring) * cellHeight;
+        double d = Double.MAX_VALUE;
+        if (column - ring >= 0) {
+            d = Math.min(d, px - leftEdge);
+        }
+        if (column + ring < columns) {
+            d = Math.min(d, rightEdge - px);
+        }
+        if (row - ring >= 0) {
+            d = Math.min(d, py - topEdge);
+        }
+        if (row + ring < rows) {
+            d = Math.min(d, bottomEdge - py);
+        }
+        d = Math.max(d, 0);
+        return d * d;
+    }
+
+    /**
+     * @return the points within the rectangle, borders included, ascending
+     */
+    public int[] inRect(Rectangle rect) {
+        int[] found = new int[16];
+        int numFound = 0;
+        for (int j = row(rect.y); j <= row(rect.bottom); j++) {
+            for (int i = column(rect.x); i <= column(rect.right); i++) {
+                int cell = j * columns + i;
+                for (int p = offsets[cell]; p < offsets[cell + 1]; p++) {
+                    int point = points[p];
+                    if (rect.inBounds(x[point], y[point])) {
+                        if (numFound == found.length) {
+                            found = Arrays.copyOf(found, 2 * found.length);
+                        }
+                        found[numFound++] = point;
+                    }
+                }
+            }
+        }
+        found = Arrays.copyOf(found, numFound);
+        Arrays.sort(found);
+        return found;
+    }
+}
@@ -0,0 +1,58 @@
+package com.hoten.delaunay.voronoi;
+
+/**
+ * Sorts ints by a double each without comparing them: a counting pass per
+ * byte of the doubles' bits, lowest byte first, skipping the bytes that are
+ * the same for all of them.
+ */
+final class RadixSort {
+
+    private RadixSort() {
+    }
+
+    /**
+     * @return the items by ascending value, equal values in the order given;
+     * no value may be NaN
+     */
+    static int[] sortBy(int[] items, double[] value) {
+        final int n = items.length;
+        long[] keys = new long[n];
+        int[][] counts = new int[8][257];
+        for (int i = 0; i < n; i++) {
+            // + 0.0 turns -0.0 into 0.0, which compares equal to it
+            long bits = Double.doubleToRawLongBits(value[items[i]] + 0.0);
+            // flip the sign bit of positive doubles and all bits of negative
+            // ones, so that the keys sort like the values as unsigned longs
+            keys[i] = bits ^ ((bits >> 63) | Long.MIN_VALUE);
+            for (int pass = 0; pass < 8; pass++) {
+                counts[pass][(int) (keys[i] >>> (8 * pass) & 0xff) + 1]++;
+            }
+        }
+
+        int[] sorted = items.clone();
+        long[] keysBuffer = new long[n];
+        int[] sortedBuffer = new int[n];
+        for (int pass = 0; pass < 8; pass++) {
+            int[] offsets = counts[pass];
+            int digit = (int) (n == 0 ? 0 : keys[0] >>> (8 * pass) & 0xff);
+            if (offsets[digit + 1] == n) {
+                continue;
+            }
+            for (int d = 0; d < 256; d++) {
+                offsets[d + 1] += offsets[d];
+            }
+            for (int i = 0; i < n; i++) {
+                int at = offsets[(int) (keys[i] >>> (8 * pass) & 0xff)]++;
+                keysBuffer[at] = keys[i];
+                sortedBuffer[at] = sorted[i];
+            }
+            long[] k = keys;
+            keys = keysBuffer;
+            keysBuffer = k;
+            int[] s = sorted;
+            sorted = sortedBuffer;
+            sortedBuffer = s;
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,58 @@
+package com.hoten.delaunay.voronoi;
+
+import java.util.EnumSet;
+
+/**
+ * One step of generating a graph: what it reads, what it writes and
+ * whether it works on all elements in parallel. A stage is dirty until it
+ * ran and again once something it reads has changed.
+ */
+final class Stage {
+
+    /**
+     * What the stages pass on to each other, mostly arrays of the stores.
+     */
+    enum Data {
+        DIAGRAM,            // the relaxed diagram, dropped once the graph is built
+        GRAPH,              // the stores' links and site positions
+        CORNER_LOCATIONS,   // corners moved to the middle of their centers
+        ISLAND,             // which corners lie outside the island shape
+        DISTANCES,          // corner distances from the border
+        OCEANS,             // water, ocean and border of the centers
+        COASTLINE,          // coast of the centers; ocean, coast and water of the corners
+        CORNER_ELEVATION,
+        CENTER_ELEVATION,
+        DOWNSLOPES,
+        WATERSHEDS,         // where the water of each corner ends up
+        RIVERS,
+        SPREAD_MOISTURE,    // corner moisture spread from rivers and lakes
+        CORNER_MOISTURE,
+        CENTER_MOISTURE,
+        OBJECTS,            // the Center, Corner and Edge objects and their links
+        ATTRIBUTES,         // everything above copied into the objects
+        BIOMES,
+        EXTERNAL            // whatever stages added from outside produce
+    }
+
+    final String name;
+    final EnumSet<Data> inputs;
+    final EnumSet<Data> outputs;
+    final boolean parallel;
+    final Runnable body;
+    // false for the stages that throw away what they read
+    boolean repeatable = true;
+    boolean dirty = true;
+
+    Stage(String name, EnumSet<Data> inputs, EnumSet<Data> outputs, boolean parallel, Runnable body) {
+        this.name = name;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.parallel = parallel;
+        this.body = body;
+    }
+
+    Stage once() {
+        repeatable = false;
+        return this;
+    }
+}
@@ -0,0 +1,29 @@
+package com.hoten.delaunay.voronoi;
+
+/**
+ * How long one stage of generating a graph took, how much of that the
+ * garbage collector ran and how much the stage allocated, summed over all
+ * threads; -1 bytes where the JVM does not count them.
+ */
+public final class StageTiming {
+
+    public final String name;
+    public final boolean parallel;
+    public final long nanos;
+    public final long gcMillis;
+    public final long allocatedBytes;
+
+    StageTiming(String name, boolean parallel, long nanos, long gcMillis, long allocatedBytes) {
+        this.name = name;
+        this.parallel = parallel;
+        this.nanos = nanos;
+        this.gcMillis = gcMillis;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-18s %-8s %9.1f ms %6d ms gc %9.1f MB", name, parallel ? "parallel" : "", nanos / 1e6,
+                gcMillis, allocatedBytes / 1e6);
+    }
+}
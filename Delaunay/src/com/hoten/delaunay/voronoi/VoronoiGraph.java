@@ -5,13 +5,17 @@ import controller.generation.TerrainCircle;
 
 import com.hoten.delaunay.geom.Point;
 import com.hoten.delaunay.geom.Rectangle;
-import com.hoten.delaunay.voronoi.nodename.as3delaunay.LineSegment;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.FlatDiagram;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.LloydRelaxation;
 import com.hoten.delaunay.voronoi.nodename.as3delaunay.Voronoi;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * VoronoiGraph.java
@@ -24,23 +28,53 @@ public abstract class VoronoiGraph {
     final public ArrayList<Corner> corners = new ArrayList<>();
     final public ArrayList<Center> centers = new ArrayList<>();
     final public Rectangle bounds;
-    final public BufferedImage pixelCenterMap;
     final int bumps;
     final double startAngle;
     final double dipAngle;
     final double dipWidth;
     final Generation_Type generationType;
     final List<TerrainCircle> circles;
+    // the same graph as flat arrays, which the passes below work on
+    private CenterStore centerStore;
+    private CornerStore cornerStore;
+    private PointIndex centerIndex, cornerIndex;
+    private BufferedImage pixelCenterMap;
+    private EdgeStore edgeStore;
+    // the stages of the generation in the order they run
+    private final List<Stage> stages = new ArrayList<>();
+    // what the graph had before any stage ran
+    private final EnumSet<Stage.Data> given;
+    private final List<StageTiming> stageTimings = new ArrayList<>();
+    private IBiomeClassifier biomeClassifier = this::getBiome;
+    private River_Type riverType = River_Type.RANDOM_WALKS;
+    private final long riverSeed;
+    private final boolean restored;
+    // the corners that are neither ocean nor coast, ascending, from the coastline on
+    private int[] landCorners;
+    // the river size from which on its moisture no longer grows
+    private static final int MAX_RIVER_LEVEL = 15;
 
     final private Random r;
     protected Color OCEAN, RIVER, LAKE, BEACH;
-    double[][] noise;
+    // the island shape for NOISE and the drawn circles for DRAWNCIRCLES,
+    // looked up for every corner
+    private NoiseField noise;
+    private CircleGrid circleGrid;
     double ISLAND_FACTOR = 1;  // 1.0 means no small islands; 2.0 leads to a lot
+    // Lloyd relaxation stops once no site moves farther than this share of
+    // the average distance between sites
+    final static double LLOYD_TOLERANCE = 0.01;
 
 
     public enum Generation_Type{
         RANDOM,
-        DRAWNCIRCLES
+        DRAWNCIRCLES,
+        NOISE
+    }
+
+    public enum River_Type {
+        RANDOM_WALKS,       // down from random corners in the hills
+        FLOW_ACCUMULATION   // wherever enough water from the hills gathers
     }
 
     public VoronoiGraph(Voronoi v, int numLloydRelaxations, Random r, Generation_Type generationType, List<TerrainCircle> circles) {
@@ -56,41 +90,285 @@ public abstract class VoronoiGraph {
         startAngle = r.nextDouble() * 2 * Math.PI;
         dipAngle = r.nextDouble() * 2 * Math.PI;
         dipWidth = r.nextDouble() * .5 + .2;
+        // the rivers start over from the same seed whenever they run again
+        riverSeed = r.nextLong();
+        restored = false;
         bounds = v.get_plotBounds();
-        for (int i = 0; i < numLloydRelaxations; i++) {
-            ArrayList<Point> points = v.siteCoords();
-            for (Point p : points) {
-                ArrayList<Point> region = v.region(p);
-                double x = 0;
-                double y = 0;
-                for (Point c : region) {
-                    x += c.x;
-                    y += c.y;
-                }
-                x /= region.size();
-                y /= region.size();
-                p.x = x;
-                p.y = y;
+        if (generationType == Generation_Type.NOISE) {
+            noise = new NoiseField(257, 8, 4, new Random(r.nextLong()));
+        } else if (generationType == Generation_Type.DRAWNCIRCLES) {
+            circleGrid = new CircleGrid(circles, bounds, 128);
+        }
+        given = EnumSet.noneOf(Stage.Data.class);
+        stages(v, numLloydRelaxations).forEach(this::addStage);
+        update();
+    }
+
+    /**
+     * For a graph that was generated before and is restored, e.g. from a
+     * file: the caller fills in centers, corners and edges. The island shape
+     * only matters while generating and is left at zero. Of the stages only
+     * the biomes can run again, unless the caller also hands over what the
+     * stages from "distances" on read with {@link #restoreStages}.
+     *
+     * @param riverSeed what the graph's rivers were laid out from, see
+     *                  {@link #getRiverSeed()}
+     * @param riverType the way they were laid out
+     */
+    protected VoronoiGraph(Rectangle bounds, Random r, long riverSeed, River_Type riverType, Generation_Type generationType,
+                           List<TerrainCircle> circles) {
+        this.generationType = generationType;
+        this.circles = circles;
+        this.r = r;
+        this.bounds = bounds;
+        bumps = 0;
+        startAngle = dipAngle = dipWidth = 0;
+        this.riverSeed = riverSeed;
+        this.riverType = riverType;
+        restored = true;
+        given = EnumSet.complementOf(EnumSet.of(Stage.Data.BIOMES, Stage.Data.EXTERNAL));
+        addStage(biomeStage());
+        stages.forEach(stage -> stage.dirty = false);
+    }
+
+    /**
+     * Lets a restored graph run the stages from "distances" on again, all of
+     * them as already run. Call it once centers, corners and edges are filled
+     * in, before any stage is added.
+     *
+     * @param distance       per corner, see {@link CornerStore#distance(int)}
+     * @param spreadMoisture per corner, see {@link CornerStore#spreadMoisture(int)}
+     * @param islandWater    per corner, see {@link CornerStore#isIslandWater(int)}
+     */
+    protected void restoreStages(double[] distance, double[] spreadMoisture, boolean[] islandWater) {
+        if (!restored || stages.size() != 1) {
+            throw new IllegalStateException("only a restored graph without added stages can restore its stages");
+        }
+        final CornerStore s = getCornerStore();
+        if (distance.length != s.size || spreadMoisture.length != s.size || islandWater.length != s.size) {
+            throw new IllegalArgumentException("expected the values of " + s.size + " corners");
+        }
+        getCenterStore();
+        getEdgeStore();
+        System.arraycopy(distance, 0, s.distance, 0, s.size);
+        System.arraycopy(spreadMoisture, 0, s.spreadMoisture, 0, s.size);
+        for (int c = 0; c < s.size; c++) {
+            s.set(c, CornerStore.ISLAND_WATER, islandWater[c]);
+        }
+        findLandCorners();
+        stages.clear();
+        terrainStages().forEach(this::addStage);
+        stages.forEach(stage -> stage.dirty = false);
+    }
+
+    /**
+     * The generation, in an order in which every stage comes after the
+     * stages it reads from.
+     */
+    private List<Stage> stages(Voronoi v, int numLloydRelaxations) {
+        // the diagram and its sites are only needed until the graph is built
+        final Object[] input = {v, null};
+        List<Stage> generation = new ArrayList<>(Arrays.asList(
+                new Stage("diagram", EnumSet.noneOf(Stage.Data.class), EnumSet.of(Stage.Data.DIAGRAM), false,
+                        () -> input[1] = relax((Voronoi) input[0], numLloydRelaxations).flatDiagram()).once(),
+                new Stage("graph", EnumSet.of(Stage.Data.DIAGRAM), EnumSet.of(Stage.Data.GRAPH), false, () -> {
+                    buildGraph((FlatDiagram) input[1]);
+                    input[0] = input[1] = null;
+                }).once(),
+                new Stage("corners", EnumSet.of(Stage.Data.GRAPH), EnumSet.of(Stage.Data.CORNER_LOCATIONS), true,
+                        this::improveCorners),
+                new Stage("objects", EnumSet.of(Stage.Data.GRAPH, Stage.Data.CORNER_LOCATIONS),
+                        EnumSet.of(Stage.Data.OBJECTS), false, this::createObjects),
+                new Stage("island", EnumSet.of(Stage.Data.CORNER_LOCATIONS), EnumSet.of(Stage.Data.ISLAND), true,
+                        this::assignIsland)));
+        generation.addAll(terrainStages());
+        return generation;
+    }
+
+    // the stages after the island shape, which a restored graph can run again
+    private List<Stage> terrainStages() {
+        return Arrays.asList(
+                new Stage("distances", EnumSet.of(Stage.Data.ISLAND), EnumSet.of(Stage.Data.DISTANCES), false,
+                        this::assignCornerDistances),
+                new Stage("oceans", EnumSet.of(Stage.Data.ISLAND), EnumSet.of(Stage.Data.OCEANS), false,
+                        this::assignOceans),
+                new Stage("coastline", EnumSet.of(Stage.Data.OCEANS), EnumSet.of(Stage.Data.COASTLINE), true,
+                        this::assignCoastAndLand),
+                new Stage("corner elevation", EnumSet.of(Stage.Data.DISTANCES, Stage.Data.COASTLINE),
+                        EnumSet.of(Stage.Data.CORNER_ELEVATION), false, this::redistributeElevations),
+                new Stage("center elevation", EnumSet.of(Stage.Data.CORNER_ELEVATION),
+                        EnumSet.of(Stage.Data.CENTER_ELEVATION), true, this::assignPolygonElevations),
+                new Stage("downslopes", EnumSet.of(Stage.Data.CORNER_ELEVATION), EnumSet.of(Stage.Data.DOWNSLOPES), true,
+                        this::calculateDownslopes),
+                new Stage("watersheds", EnumSet.of(Stage.Data.DOWNSLOPES, Stage.Data.COASTLINE),
+                        EnumSet.of(Stage.Data.WATERSHEDS), true, this::calculateWatersheds),
+                new Stage("rivers", EnumSet.of(Stage.Data.DOWNSLOPES, Stage.Data.CORNER_ELEVATION, Stage.Data.COASTLINE),
+                        EnumSet.of(Stage.Data.RIVERS), false, this::createRivers),
+                new Stage("spread moisture", EnumSet.of(Stage.Data.RIVERS, Stage.Data.COASTLINE),
+                        EnumSet.of(Stage.Data.SPREAD_MOISTURE), false, this::assignCornerMoisture),
+                new Stage("corner moisture", EnumSet.of(Stage.Data.SPREAD_MOISTURE, Stage.Data.COASTLINE),
+                        EnumSet.of(Stage.Data.CORNER_MOISTURE), false, this::redistributeMoisture),
+                new Stage("center moisture", EnumSet.of(Stage.Data.CORNER_MOISTURE),
+                        EnumSet.of(Stage.Data.CENTER_MOISTURE), true, this::assignPolygonMoisture),
+                new Stage("attributes", EnumSet.of(Stage.Data.OBJECTS, Stage.Data.OCEANS, Stage.Data.COASTLINE,
+                        Stage.Data.CORNER_ELEVATION, Stage.Data.CENTER_ELEVATION, Stage.Data.DOWNSLOPES, Stage.Data.WATERSHEDS,
+                        Stage.Data.RIVERS,
+                        Stage.Data.CORNER_MOISTURE, Stage.Data.CENTER_MOISTURE),
+                        EnumSet.of(Stage.Data.ATTRIBUTES), true, this::copyAttributes),
+                biomeStage());
+    }
+
+    private Stage biomeStage() {
+        return new Stage("biomes", EnumSet.of(Stage.Data.ATTRIBUTES), EnumSet.of(Stage.Data.BIOMES), true,
+                this::assignBiomes);
+    }
+
+    private void addStage(Stage stage) {
+        EnumSet<Stage.Data> ready = EnumSet.copyOf(given);
+        stages.forEach(s -> ready.addAll(s.outputs));
+        if (!ready.containsAll(stage.inputs)) {
+            EnumSet<Stage.Data> missing = EnumSet.copyOf(stage.inputs);
+            missing.removeAll(ready);
+            throw new IllegalStateException("stage " + stage.name + " needs " + missing + ", which no stage before it writes");
+        }
+        if (stages.stream().anyMatch(s -> s.name.equals(stage.name))) {
+            throw new IllegalArgumentException("there already is a stage " + stage.name);
+        }
+        stages.add(stage);
+    }
+
+    /**
+     * Adds a stage that runs after all others, e.g. to build a mesh of the
+     * graph, and again whenever an earlier stage ran. It runs with the next
+     * {@link #update()}.
+     */
+    public void addStage(String name, Runnable body) {
+        addStage(name, false, body);
+    }
+
+    /**
+     * @param parallel whether the body works in parallel, as the timings
+     *                 report it
+     */
+    public void addStage(String name, boolean parallel, Runnable body) {
+        addStage(new Stage(name, EnumSet.of(Stage.Data.BIOMES), EnumSet.of(Stage.Data.EXTERNAL), parallel, body));
+    }
+
+    /**
+     * Marks the stage, and every stage that reads what it writes, to run
+     * again with the next {@link #update()}. The stages up to and including
+     * "graph" run only once.
+     */
+    public void invalidate(String stageName) {
+        Stage first = stages.stream().filter(s -> s.name.equals(stageName)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(restored
+                        ? "stage " + stageName + " cannot run again on a restored graph, which has " + stageNames()
+                        : "there is no stage " + stageName));
+        if (!first.repeatable) {
+            throw new IllegalArgumentException("stage " + stageName + " cannot run again");
+        }
+        EnumSet<Stage.Data> stale = EnumSet.noneOf(Stage.Data.class);
+        for (Stage stage : stages.subList(stages.indexOf(first), stages.size())) {
+            if (stage == first || stage.inputs.stream().anyMatch(stale::contains)) {
+                stage.dirty = true;
+                stale.addAll(stage.outputs);
+            }
+        }
+    }
+
+    private List<String> stageNames() {
+        List<String> names = new ArrayList<>();
+        stages.forEach(stage -> names.add(stage.name));
+        return names;
+    }
+
+    /**
+     * Runs the stages that are dirty, in order, and records how long each
+     * took.
+     */
+    public void update() {
+        stageTimings.clear();
+        for (Stage stage : stages) {
+            if (!stage.dirty) {
+                continue;
             }
-            v = new Voronoi(points, null, v.get_plotBounds());
+            long allocated = allocatedBytes();
+            long gc = gcMillis();
+            long start = System.nanoTime();
+            stage.body.run();
+            long nanos = System.nanoTime() - start;
+            stageTimings.add(new StageTiming(stage.name, stage.parallel, nanos, gcMillis() - gc,
+                    allocated < 0 ? -1 : allocatedBytes() - allocated));
+            stage.dirty = false;
+        }
+    }
+
+    /**
+     * Replaces {@link #getBiome(Center)} in the biome stage, which runs again
+     * with the next {@link #update()}.
+     */
+    public void setBiomeClassifier(IBiomeClassifier biomeClassifier) {
+        this.biomeClassifier = biomeClassifier;
+        invalidate("biomes");
+    }
+
+    /**
+     * Lays out the rivers the given way from now on; they and everything that
+     * depends on them run again with the next {@link #update()}.
+     */
+    public void setRiverType(River_Type riverType) {
+        this.riverType = riverType;
+        invalidate("rivers");
+    }
+
+    public River_Type getRiverType() {
+        return riverType;
+    }
+
+    /**
+     * @return what the rivers are laid out from, for restoring the graph
+     */
+    public long getRiverSeed() {
+        return riverSeed;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(collector.getCollectionTime(), 0);
         }
-        buildGraph(v);
-        improveCorners();
+        return total;
+    }
 
-        assignCornerElevations();
-        assignOceanCoastAndLand();
-        redistributeElevations(landCorners());
-        assignPolygonElevations();
+    // summed over the live threads, so that the fork-join workers count too
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(bytes, 0);
+        }
+        return total;
+    }
 
-        calculateDownslopes();
-        //calculateWatersheds();
-        createRivers();
-        assignCornerMoisture();
-        redistributeMoisture(landCorners());
-        assignPolygonMoisture();
-        assignBiomes();
+    /**
+     * @return how long each stage of the last update took, in the order they
+     * ran; empty for a restored graph until something runs again
+     */
+    public List<StageTiming> getStageTimings() {
+        return Collections.unmodifiableList(stageTimings);
+    }
 
-        pixelCenterMap = new BufferedImage((int) bounds.width, (int) bounds.width, BufferedImage.TYPE_4BYTE_ABGR);
+    private Voronoi relax(Voronoi v, int numLloydRelaxations) {
+        if (numLloydRelaxations == 0) {
+            return v;
+        }
+        LloydRelaxation relaxation = new LloydRelaxation(v);
+        double spacing = Math.sqrt(bounds.width * bounds.height / v.get_siteCount());
+        relaxation.relax(numLloydRelaxations, LLOYD_TOLERANCE * spacing);
+        return relaxation.voronoi();
     }
 
     abstract protected Enum getBiome(Center p);
@@ -100,22 +378,22 @@ public abstract class VoronoiGraph {
     abstract public IMaterial getColorAsMaterial(Enum biome);
 
     private void improveCorners() {
-        Point[] newP = new Point[corners.size()];
-        for (Corner c : corners) {
-            if (c.border) {
-                newP[c.index] = c.loc;
-            } else {
+        // the corners move
+        cornerIndex = null;
+        final CenterStore p = centerStore;
+        final CornerStore q = cornerStore;
+        IntStream.range(0, q.size).parallel().forEach(c -> {
+            if (!q.is(c, CornerStore.BORDER)) {
                 double x = 0;
                 double y = 0;
-                for (Center center : c.touches) {
-                    x += center.loc.x;
-                    y += center.loc.y;
+                for (int k = q.touches.start(c); k < q.touches.end(c); k++) {
+                    x += p.x[q.touches.target(k)];
+                    y += p.y[q.touches.target(k)];
                 }
-                newP[c.index] = new Point(x / c.touches.size(), y / c.touches.size());
+                q.x[c] = x / q.touches.size(c);
+                q.y[c] = y / q.touches.size(c);
             }
-        }
-        corners.stream().forEach((c) -> c.loc = newP[c.index]);
-        edges.stream().filter((e) -> (e.v0 != null && e.v1 != null)).forEach((e) -> e.setVornoi(e.v0, e.v1));
+        });
     }
 
     public Edge edgeWithCenters(Center c1, Center c2) {
@@ -239,12 +517,9 @@ public abstract class VoronoiGraph {
             }
         }
 
-        Graphics2D pixelCenterGraphics = pixelCenterMap.createGraphics();
-
         //draw via triangles
         for (Center c : centers) {
             drawPolygon(g, c, drawBiomes ? getColor(c.biome) : defaultColors[c.index]);
-            drawPolygon(pixelCenterGraphics, c, new Color(c.index));
         }
 
         for (Edge e : edges) {
@@ -273,138 +548,83 @@ public abstract class VoronoiGraph {
         g.drawRect((int) bounds.x, (int) bounds.y, (int) bounds.width, (int) bounds.height);
     }
 
-    private void buildGraph(Voronoi v) {
-        final HashMap<Point, Center> pointCenterMap = new HashMap<>();
-        final ArrayList<Point> points = v.siteCoords();
-        points.stream().forEach((p) -> {
-            Center c = new Center();
-            c.loc = p;
-            c.index = centers.size();
-            centers.add(c);
-            pointCenterMap.put(p, c);
-        });
-
-        //bug fix
-        centers.stream().forEach((c) -> v.region(c.loc));
-
-        final ArrayList<com.hoten.delaunay.voronoi.nodename.as3delaunay.Edge> libedges = v.edges();
-        final HashMap<Integer, Corner> pointCornerMap = new HashMap<>();
-
-        for (com.hoten.delaunay.voronoi.nodename.as3delaunay.Edge libedge : libedges) {
-            final LineSegment vEdge = libedge.voronoiEdge();
-            final LineSegment dEdge = libedge.delaunayLine();
-
-            final Edge edge = new Edge();
-            edge.index = edges.size();
-            edges.add(edge);
-
-            edge.v0 = makeCorner(pointCornerMap, vEdge.p0);
-            edge.v1 = makeCorner(pointCornerMap, vEdge.p1);
-            edge.d0 = pointCenterMap.get(dEdge.p0);
-            edge.d1 = pointCenterMap.get(dEdge.p1);
-
-            // Centers point to edges. Corners point to edges.
-            if (edge.d0 != null) {
-                edge.d0.borders.add(edge);
-            }
-            if (edge.d1 != null) {
-                edge.d1.borders.add(edge);
-            }
-            if (edge.v0 != null) {
-                edge.v0.protrudes.add(edge);
-            }
-            if (edge.v1 != null) {
-                edge.v1.protrudes.add(edge);
-            }
-
-            // Centers point to centers.
-            if (edge.d0 != null && edge.d1 != null) {
-                addToCenterList(edge.d0.neighbors, edge.d1);
-                addToCenterList(edge.d1.neighbors, edge.d0);
-            }
-
-            // Corners point to corners
-            if (edge.v0 != null && edge.v1 != null) {
-                addToCornerList(edge.v0.adjacent, edge.v1);
-                addToCornerList(edge.v1.adjacent, edge.v0);
-            }
-
-            // Centers point to corners
-            if (edge.d0 != null) {
-                addToCornerList(edge.d0.corners, edge.v0);
-                addToCornerList(edge.d0.corners, edge.v1);
-            }
-            if (edge.d1 != null) {
-                addToCornerList(edge.d1.corners, edge.v0);
-                addToCornerList(edge.d1.corners, edge.v1);
-            }
-
-            // Corners point to centers
-            if (edge.v0 != null) {
-                addToCenterList(edge.v0.touches, edge.d0);
-                addToCenterList(edge.v0.touches, edge.d1);
-            }
-            if (edge.v1 != null) {
-                addToCenterList(edge.v1.touches, edge.d0);
-                addToCenterList(edge.v1.touches, edge.d1);
-            }
+    private void buildGraph(FlatDiagram d) {
+        // centers are indexed like the sites, edges like the edges of the
+        // diagram and corners like the vertices at the ends of visible edges,
+        // which are one per vertex of the sweep
+        final int numCorners = d.numEdgeVertices;
+        final double[] cornerX = Arrays.copyOf(d.vertexX, numCorners);
+        final double[] cornerY = Arrays.copyOf(d.vertexY, numCorners);
+
+        final int[] d0 = d.edgeSite0.clone();
+        final int[] d1 = d.edgeSite1.clone();
+        final int[] v0 = d.edgeVertex0.clone();
+        final int[] v1 = d.edgeVertex1.clone();
+        edgeStore = new EdgeStore(d0, d1, v0, v1);
+
+        // Centers point to edges. Corners point to edges.
+        final Adjacency borders = Adjacency.incidence(d.numSites, d0, d1);
+        final Adjacency protrudes = Adjacency.incidence(numCorners, v0, v1);
+        // Centers point to centers and corners, corners to corners and centers,
+        // in the order of the edges they share
+        centerStore = new CenterStore(d.siteX.clone(), d.siteY.clone(),
+                Adjacency.ends(borders, d0, d1, true, d.numSites),
+                Adjacency.ends(borders, v0, v1, false, numCorners),
+                borders);
+        cornerStore = new CornerStore(cornerX, cornerY,
+                Adjacency.ends(protrudes, d0, d1, false, d.numSites),
+                Adjacency.ends(protrudes, v0, v1, true, numCorners),
+                protrudes);
+        for (int c = 0; c < numCorners; c++) {
+            cornerStore.set(c, CornerStore.BORDER, bounds.liesOnAxes(new Point(cornerX[c], cornerY[c])));
         }
     }
 
-    // Helper functions for the following for loop; ideally these
-    // would be inlined
-    private void addToCornerList(ArrayList<Corner> list, Corner c) {
-        if (c != null && !list.contains(c)) {
-            list.add(c);
-        }
+    private void assignIsland() {
+        final CornerStore s = cornerStore;
+        IntStream.range(0, s.size).parallel()
+                .forEach(c -> s.set(c, CornerStore.ISLAND_WATER, isWater(new Point(s.x[c], s.y[c]))));
     }
 
-    private void addToCenterList(ArrayList<Center> list, Center c) {
-        if (c != null && !list.contains(c)) {
-            list.add(c);
-        }
-    }
-
-    //ensures that each corner is represented by only one corner object
-    private Corner makeCorner(HashMap<Integer, Corner> pointCornerMap, Point p) {
-        if (p == null) {
-            return null;
-        }
-        int index = (int) ((int) p.x + (int) (p.y) * bounds.width * 2);
-        Corner c = pointCornerMap.get(index);
-        if (c == null) {
-            c = new Corner();
-            c.loc = p;
-            c.border = bounds.liesOnAxes(p);
-            c.index = corners.size();
-            corners.add(c);
-            pointCornerMap.put(index, c);
-        }
-        return c;
-    }
-
-    private void assignCornerElevations() {
-        LinkedList<Corner> queue = new LinkedList<>();
-        for (Corner c : corners) {
-            c.water = isWater(c.loc);
-            if (c.border) {
-                c.elevation = 0;
-                queue.add(c);
+    // the distance over the corners from the border, 0.01 per step and 1.01
+    // per step on land; every corner is settled once, in the order of its
+    // distance counted in hundredths
+    private void assignCornerDistances() {
+        final CornerStore s = cornerStore;
+        final int[] hundredths = new int[s.size];
+        BucketQueue queue = new BucketQueue(101);
+        for (int c = 0; c < s.size; c++) {
+            if (s.is(c, CornerStore.BORDER)) {
+                s.distance[c] = 0;
+                queue.add(c, 0);
             } else {
-                c.elevation = Double.MAX_VALUE;
+                s.distance[c] = Double.MAX_VALUE;
+                hundredths[c] = Integer.MAX_VALUE;
             }
         }
 
         while (!queue.isEmpty()) {
-            Corner c = queue.pop();
-            for (Corner a : c.adjacent) {
-                double newElevation = 0.01 + c.elevation;
-                if (!c.water && !a.water) {
-                    newElevation += 1;
+            int c = queue.pop();
+            if (queue.key() != hundredths[c]) {
+                continue;  // added again since, with a shorter distance
+            }
+            for (int k = s.adjacent.start(c); k < s.adjacent.end(c); k++) {
+                int a = s.adjacent.target(k);
+                double newDistance = 0.01 + s.distance[c];
+                int step = 1;
+                if (!s.is(c, CornerStore.ISLAND_WATER) && !s.is(a, CornerStore.ISLAND_WATER)) {
+                    newDistance += 1;
+                    step += 100;
                 }
-                if (newElevation < a.elevation) {
-                    a.elevation = newElevation;
-                    queue.add(a);
+                // paths that are as long in hundredths may still differ in
+                // rounding; keep the smallest sum like relaxing until nothing
+                // changes would
+                if (newDistance < s.distance[a]) {
+                    s.distance[a] = newDistance;
+                    if (hundredths[c] + step < hundredths[a]) {
+                        hundredths[a] = hundredths[c] + step;
+                        queue.add(a, hundredths[a]);
+                    }
                 }
             }
         }
@@ -418,7 +638,9 @@ public abstract class VoronoiGraph {
             case RANDOM:
                 return centralIsland(p);
             case DRAWNCIRCLES:
-                return drawnShapes(circles,p);
+                return !circleGrid.contains(p.x, p.y);
+            case NOISE:
+                return noiseIsland(p);
             default:
                 return false;
         }
@@ -426,13 +648,6 @@ public abstract class VoronoiGraph {
 
         //return false;
 
-        /*if (noise == null) {
-         noise = new Perlin2d(.125, 8, MyRandom.seed).createArray(257, 257);
-         }
-         int x = (int) ((p.x + 1) * 128);
-         int y = (int) ((p.y + 1) * 128);
-         return noise[x][y] < .3 + .3 * p.l2();*/
-
         /*boolean eye1 = new Point(p.x - 0.2, p.y / 2 + 0.2).length() < 0.05;
          boolean eye2 = new Point(p.x + 0.2, p.y / 2 + 0.2).length() < 0.05;
          boolean body = p.length() < 0.8 - 0.18 * Math.sin(5 * Math.atan2(p.y, p.x));
@@ -455,211 +670,569 @@ public abstract class VoronoiGraph {
         return !(length < r1 || (length > r1 * ISLAND_FACTOR && length < r2));
     }
 
-    private boolean drawnShapes(List<TerrainCircle> circles,Point p){
-
-        for (TerrainCircle circle : circles) {
-           if( Math.pow(p.x - circle.m.x,2) + Math.pow(p.y - circle.m.y,2) < Math.pow(circle.r,2)){
-               return false;
-           }
-        }
-        return true;
+    // land where the noise rises above a threshold that grows towards the edges
+    private boolean noiseIsland(Point p) {
+        double x = 2 * (p.x / bounds.width - 0.5);
+        double y = 2 * (p.y / bounds.height - 0.5);
+        return noise.get(p.x / bounds.width, p.y / bounds.height) < .3 + .3 * (x * x + y * y);
     }
 
-    private void assignOceanCoastAndLand() {
-        LinkedList<Center> queue = new LinkedList<>();
+    private void assignOceans() {
+        final CenterStore p = centerStore;
+        final CornerStore q = cornerStore;
+        IntQueue queue = new IntQueue();
         final double waterThreshold = .3;
-        for (final Center center : centers) {
+        for (int center = 0; center < p.size; center++) {
+            p.set(center, CenterStore.BORDER, false);
+            p.set(center, CenterStore.OCEAN, false);
+        }
+        for (int center = 0; center < p.size; center++) {
             int numWater = 0;
-            for (final Corner c : center.corners) {
-                if (c.border) {
-                    center.border = center.water = center.ocean = true;
+            for (int k = p.corners.start(center); k < p.corners.end(center); k++) {
+                int c = p.corners.target(k);
+                if (q.is(c, CornerStore.BORDER)) {
+                    p.set(center, CenterStore.BORDER, true);
+                    p.set(center, CenterStore.OCEAN, true);
                     queue.add(center);
                 }
-                if (c.water) {
+                if (q.is(c, CornerStore.ISLAND_WATER)) {
                     numWater++;
                 }
             }
-            center.water = center.ocean || ((double) numWater / center.corners.size() >= waterThreshold);
+            p.set(center, CenterStore.WATER, p.is(center, CenterStore.OCEAN)
+                    || ((double) numWater / p.corners.size(center) >= waterThreshold));
         }
         while (!queue.isEmpty()) {
-            final Center center = queue.pop();
-            for (final Center n : center.neighbors) {
-                if (n.water && !n.ocean) {
-                    n.ocean = true;
+            final int center = queue.pop();
+            for (int k = p.neighbors.start(center); k < p.neighbors.end(center); k++) {
+                int n = p.neighbors.target(k);
+                if (p.is(n, CenterStore.WATER) && !p.is(n, CenterStore.OCEAN)) {
+                    p.set(n, CenterStore.OCEAN, true);
                     queue.add(n);
                 }
             }
         }
-        for (Center center : centers) {
+    }
+
+    private void assignCoastAndLand() {
+        final CenterStore p = centerStore;
+        final CornerStore q = cornerStore;
+        IntStream.range(0, p.size).parallel().forEach(center -> {
             boolean oceanNeighbor = false;
             boolean landNeighbor = false;
-            for (Center n : center.neighbors) {
-                oceanNeighbor |= n.ocean;
-                landNeighbor |= !n.water;
+            for (int k = p.neighbors.start(center); k < p.neighbors.end(center); k++) {
+                int n = p.neighbors.target(k);
+                oceanNeighbor |= p.is(n, CenterStore.OCEAN);
+                landNeighbor |= !p.is(n, CenterStore.WATER);
             }
-            center.coast = oceanNeighbor && landNeighbor;
-        }
+            p.set(center, CenterStore.COAST, oceanNeighbor && landNeighbor);
+        });
 
-        for (Corner c : corners) {
+        IntStream.range(0, q.size).parallel().forEach(c -> {
             int numOcean = 0;
             int numLand = 0;
-            for (Center center : c.touches) {
-                numOcean += center.ocean ? 1 : 0;
-                numLand += !center.water ? 1 : 0;
+            for (int k = q.touches.start(c); k < q.touches.end(c); k++) {
+                int center = q.touches.target(k);
+                numOcean += p.is(center, CenterStore.OCEAN) ? 1 : 0;
+                numLand += !p.is(center, CenterStore.WATER) ? 1 : 0;
             }
-            c.ocean = numOcean == c.touches.size();
-            c.coast = numOcean > 0 && numLand > 0;
-            c.water = c.border || ((numLand != c.touches.size()) && !c.coast);
-        }
+            int numTouches = q.touches.size(c);
+            boolean coast = numOcean > 0 && numLand > 0;
+            q.set(c, CornerStore.OCEAN, numOcean == numTouches);
+            q.set(c, CornerStore.COAST, coast);
+            q.set(c, CornerStore.WATER, q.is(c, CornerStore.BORDER) || ((numLand != numTouches) && !coast));
+        });
+
+        findLandCorners();
     }
 
-    private ArrayList<Corner> landCorners() {
-        final ArrayList<Corner> list = new ArrayList<>();
-        for (Corner c : corners) {
-            if (!c.ocean && !c.coast) {
-                list.add(c);
+    private void findLandCorners() {
+        final CornerStore q = cornerStore;
+        int[] land = new int[q.size];
+        int numLand = 0;
+        for (int c = 0; c < q.size; c++) {
+            if (!q.is(c, CornerStore.OCEAN) && !q.is(c, CornerStore.COAST)) {
+                land[numLand++] = c;
             }
         }
-        return list;
+        landCorners = Arrays.copyOf(land, numLand);
     }
 
-    private void redistributeElevations(ArrayList<Corner> landCorners) {
-        Collections.sort(landCorners, (o1, o2) -> {
-            if (o1.elevation > o2.elevation) {
-                return 1;
-            } else if (o1.elevation < o2.elevation) {
-                return -1;
-            }
-            return 0;
-        });
+    private void redistributeElevations() {
+        final CornerStore s = cornerStore;
+        final int[] sorted = RadixSort.sortBy(landCorners, s.distance);
 
         final double SCALE_FACTOR = 1.1;
-        for (int i = 0; i < landCorners.size(); i++) {
-            double y = (double) i / landCorners.size();
+        for (int i = 0; i < sorted.length; i++) {
+            double y = (double) i / sorted.length;
             double x = Math.sqrt(SCALE_FACTOR) - Math.sqrt(SCALE_FACTOR * (1 - y));
             x = Math.min(x, 1);
-            landCorners.get(i).elevation = x;
+            s.elevation[sorted[i]] = x;
         }
 
-        for (Corner c : corners) {
-            if (c.ocean || c.coast) {
-                c.elevation = 0.0;
+        for (int c = 0; c < s.size; c++) {
+            if (s.is(c, CornerStore.OCEAN) || s.is(c, CornerStore.COAST)) {
+                s.elevation[c] = 0.0;
             }
         }
     }
 
     private void assignPolygonElevations() {
-        for (Center center : centers) {
+        averageCorners(cornerStore.elevation, centerStore.elevation);
+    }
+
+    // each center gets the mean of its corners' values
+    private void averageCorners(double[] cornerValues, double[] centerValues) {
+        final Adjacency corners = centerStore.corners;
+        IntStream.range(0, centerStore.size).parallel().forEach(center -> {
             double total = 0;
-            for (Corner c : center.corners) {
-                total += c.elevation;
+            for (int k = corners.start(center); k < corners.end(center); k++) {
+                total += cornerValues[corners.target(k)];
             }
-            center.elevation = total / center.corners.size();
-        }
+            centerValues[center] = total / corners.size(center);
+        });
     }
 
     private void calculateDownslopes() {
-        for (Corner c : corners) {
-            Corner down = c;
-            //System.out.println("ME: " + c.elevation);
-            for (Corner a : c.adjacent) {
-                //System.out.println(a.elevation);
-                if (a.elevation <= down.elevation) {
+        final CornerStore s = cornerStore;
+        IntStream.range(0, s.size).parallel().forEach(c -> {
+            int down = c;
+            for (int k = s.adjacent.start(c); k < s.adjacent.end(c); k++) {
+                int a = s.adjacent.target(k);
+                if (s.elevation[a] <= s.elevation[down]) {
                     down = a;
                 }
             }
-            c.downslope = down;
+            s.downslope[c] = down;
+            s.downslopeEdge[c] = down == c ? -1 : s.edgeTo(c, down, edgeStore);
+        });
+    }
+
+    // Follows the downslopes of all corners at once: each round of pointer
+    // jumping lets every corner look twice as far ahead as before, so that
+    // log2(corners) rounds reach the end of every path. Only loops over flat
+    // ground never end; each of those is named after its lowest corner
+    private void calculateWatersheds() {
+        final CornerStore s = cornerStore;
+        final boolean[] end = new boolean[s.size];
+        int[] ahead = new int[s.size];
+        int[] further = new int[s.size];
+        final int[] first = ahead;
+        IntStream.range(0, s.size).parallel().forEach(c -> {
+            end[c] = s.is(c, CornerStore.OCEAN) || !drains(c);
+            first[c] = end[c] ? c : s.downslope[c];
+        });
+        // 2^rounds > corners
+        final int maxRounds = 32 - Integer.numberOfLeadingZeros(s.size);
+        for (int round = 0; round < maxRounds && !allEnded(ahead, end); round++) {
+            final int[] from = ahead, to = further;
+            IntStream.range(0, s.size).parallel().forEach(c -> to[c] = from[from[c]]);
+            further = ahead;
+            ahead = to;
         }
+
+        // corners that are still on their way have gone around their loop,
+        // so ahead of them lies a corner of it
+        final int[] loop = new int[s.size];
+        Arrays.fill(loop, -1);
+        for (int c = 0; c < s.size; c++) {
+            int a = ahead[c];
+            if (end[a]) {
+                s.watershed[c] = a;
+                continue;
+            }
+            if (loop[a] < 0) {
+                int lowest = a;
+                for (int k = s.downslope[a]; k != a; k = s.downslope[k]) {
+                    lowest = Math.min(lowest, k);
+                }
+                loop[a] = lowest;
+                for (int k = s.downslope[a]; k != a; k = s.downslope[k]) {
+                    loop[k] = lowest;
+                }
+            }
+            s.watershed[c] = loop[a];
+        }
+
+        Arrays.fill(s.watershedSize, 0);
+        for (int c = 0; c < s.size; c++) {
+            s.watershedSize[s.watershed[c]]++;
+        }
+    }
+
+    private static boolean allEnded(int[] ahead, boolean[] end) {
+        return IntStream.range(0, ahead.length).parallel().allMatch(c -> end[ahead[c]]);
     }
 
     private void createRivers() {
+        Arrays.fill(cornerStore.river, 0);
+        Arrays.fill(edgeStore.river, 0);
+        if (riverType == River_Type.FLOW_ACCUMULATION) {
+            accumulateRivers();
+        } else {
+            walkRivers();
+        }
+    }
+
+    private void walkRivers() {
+        final CornerStore s = cornerStore;
+        Random r = new Random(riverSeed);
         for (int i = 0; i < bounds.width / 2; i++) {
-            Corner c = corners.get(r.nextInt(corners.size()));
-            if (c.ocean || c.elevation < 0.3 || c.elevation > 0.9) {
+            int c = r.nextInt(s.size);
+            if (!isRiverSource(c)) {
                 continue;
             }
             // Bias rivers to go west: if (q.downslope.x > q.x) continue;
-            while (!c.coast) {
-                if (c == c.downslope) {
-                    break;
-                }
-                Edge edge = lookupEdgeFromCorner(c, c.downslope);
-                if (!edge.v0.water || !edge.v1.water) {
-                    edge.river++;
-                    c.river++;
-                    c.downslope.river++;  // TODO: fix double count
-                }
-                c = c.downslope;
+            while (drains(c)) {
+                addRiver(c, 1);
+                c = s.downslope[c];
             }
         }
     }
 
-    private Edge lookupEdgeFromCorner(Corner c, Corner downslope) {
-        for (Edge e : c.protrudes) {
-            if (e.v0 == downslope || e.v1 == downslope) {
-                return e;
+    // Every corner a walk could start from sends one unit of water down to
+    // the coast, summed up in a single pass from the tops on: Kahn's order on
+    // the downslopes, a corner once all corners draining into it are done.
+    // A walk starts at each corner with a chance of walks / corners, so
+    // corners / walks units make one step of river strength, as many as
+    // walks would bring on average. Rivers start from a quarter of that on,
+    // else few of them would reach up into the hills.
+    // The pass stays serial: in parallel, round by round of the corners that
+    // are done at the same time, it takes as many rounds as the longest river
+    // has steps, some 800 at 150000 sites and most of them a few corners
+    // wide, and was three times slower
+    private void accumulateRivers() {
+        final CornerStore s = cornerStore;
+        final int[] flow = new int[s.size];
+        // the corners draining into each corner that are not summed up yet
+        final int[] upstream = new int[s.size];
+        IntStream.range(0, s.size).parallel().forEach(c -> flow[c] = isRiverSource(c) ? 1 : 0);
+        for (int c = 0; c < s.size; c++) {
+            if (drains(c)) {
+                upstream[s.downslope[c]]++;
             }
         }
-        return null;
+        IntQueue queue = new IntQueue();
+        for (int c = 0; c < s.size; c++) {
+            if (upstream[c] == 0) {
+                queue.add(c);
+            }
+        }
+        // corners that drain in a circle over flat ground never come up and
+        // keep what reached them
+        while (!queue.isEmpty()) {
+            int c = queue.pop();
+            if (drains(c)) {
+                int down = s.downslope[c];
+                flow[down] += flow[c];
+                if (--upstream[down] == 0) {
+                    queue.add(down);
+                }
+            }
+        }
+
+        final double walksPerUnit = (bounds.width / 2) / s.size;
+        for (int c = 0; c < s.size; c++) {
+            double strength = flow[c] * walksPerUnit;
+            if (strength >= 0.25 && drains(c)) {
+                addRiver(c, (int) Math.ceil(strength));
+            }
+        }
+    }
+
+    private boolean isRiverSource(int c) {
+        final CornerStore s = cornerStore;
+        return !s.is(c, CornerStore.OCEAN) && s.elevation[c] >= 0.3 && s.elevation[c] <= 0.9;
+    }
+
+    // rivers end at the coast or where the ground does not fall any more
+    private boolean drains(int c) {
+        return !cornerStore.is(c, CornerStore.COAST) && cornerStore.downslope[c] != c;
     }
 
+    // a river from the corner to its downslope, not counted across lakes
+    private void addRiver(int c, int strength) {
+        final CornerStore s = cornerStore;
+        int edge = s.downslopeEdge[c];
+        if (!s.is(edgeStore.v0[edge], CornerStore.WATER) || !s.is(edgeStore.v1[edge], CornerStore.WATER)) {
+            edgeStore.river[edge] += strength;
+            s.river[c] += strength;
+            s.river[s.downslope[c]] += strength;  // TODO: fix double count
+        }
+    }
+
+    // the moisture of rivers and lakes, 0.9 times less per step away from
+    // them. Every corner is settled once, wettest first: the sources sorted by
+    // their moisture merge with a queue of the corners they reached, in which
+    // the moisture can only fall
     private void assignCornerMoisture() {
-        LinkedList<Corner> queue = new LinkedList<>();
-        for (Corner c : corners) {
-            if ((c.water || c.river > 0) && !c.ocean) {
-                c.moisture = c.river > 0 ? Math.min(3.0, (0.2 * c.river)) : 1.0;
-                queue.push(c);
+        final CornerStore s = cornerStore;
+        final boolean[] settled = new boolean[s.size];
+        // a source is as wet as its river is big, up to 15, a lake like a river of 5
+        final int[] level = new int[s.size];
+        int[] offsets = new int[MAX_RIVER_LEVEL + 2];
+        for (int c = 0; c < s.size; c++) {
+            if ((s.is(c, CornerStore.WATER) || s.river[c] > 0) && !s.is(c, CornerStore.OCEAN)) {
+                s.spreadMoisture[c] = s.river[c] > 0 ? Math.min(3.0, (0.2 * s.river[c])) : 1.0;
+                level[c] = s.river[c] > 0 ? Math.min(s.river[c], MAX_RIVER_LEVEL) : 5;
+                offsets[level[c] + 1]++;
             } else {
-                c.moisture = 0.0;
+                s.spreadMoisture[c] = 0.0;
+            }
+        }
+        for (int i = 1; i <= MAX_RIVER_LEVEL; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        final int numSources = offsets[MAX_RIVER_LEVEL + 1];
+        int[] sources = new int[numSources];
+        for (int c = 0; c < s.size; c++) {
+            if (level[c] > 0) {
+                sources[offsets[level[c]]++] = c;
             }
         }
 
-        while (!queue.isEmpty()) {
-            Corner c = queue.pop();
-            for (Corner a : c.adjacent) {
-                double newM = .9 * c.moisture;
-                if (newM > a.moisture) {
-                    a.moisture = newM;
+        IntQueue queue = new IntQueue();
+        int next = numSources - 1;
+        while (next >= 0 || !queue.isEmpty()) {
+            int c;
+            if (queue.isEmpty() || next >= 0 && s.spreadMoisture[sources[next]] >= s.spreadMoisture[queue.peek()]) {
+                c = sources[next--];
+            } else {
+                c = queue.pop();
+            }
+            if (settled[c]) {
+                continue;
+            }
+            settled[c] = true;
+            double newM = .9 * s.spreadMoisture[c];
+            for (int k = s.adjacent.start(c); k < s.adjacent.end(c); k++) {
+                int a = s.adjacent.target(k);
+                if (newM > s.spreadMoisture[a]) {
+                    s.spreadMoisture[a] = newM;
                     queue.add(a);
                 }
             }
         }
 
         // Salt water
-        for (Corner c : corners) {
-            if (c.ocean || c.coast) {
-                c.moisture = 1.0;
+        for (int c = 0; c < s.size; c++) {
+            if (s.is(c, CornerStore.OCEAN) || s.is(c, CornerStore.COAST)) {
+                s.spreadMoisture[c] = 1.0;
             }
         }
     }
 
-    private void redistributeMoisture(ArrayList<Corner> landCorners) {
-        Collections.sort(landCorners, (o1, o2) -> {
-            if (o1.moisture > o2.moisture) {
-                return 1;
-            } else if (o1.moisture < o2.moisture) {
-                return -1;
-            }
-            return 0;
-        });
-        for (int i = 0; i < landCorners.size(); i++) {
-            landCorners.get(i).moisture = (double) i / landCorners.size();
+    private void redistributeMoisture() {
+        final CornerStore s = cornerStore;
+        System.arraycopy(s.spreadMoisture, 0, s.moisture, 0, s.size);
+        final int[] sorted = RadixSort.sortBy(landCorners, s.spreadMoisture);
+        for (int i = 0; i < sorted.length; i++) {
+            s.moisture[sorted[i]] = (double) i / sorted.length;
         }
     }
 
     private void assignPolygonMoisture() {
-        for (Center center : centers) {
-            double total = 0;
-            for (Corner c : center.corners) {
-                total += c.moisture;
+        averageCorners(cornerStore.moisture, centerStore.moisture);
+    }
+
+    // the Center, Corner and Edge objects with their links; the attributes follow later
+    private void createObjects() {
+        final CenterStore p = centerStore;
+        final CornerStore q = cornerStore;
+        final EdgeStore s = edgeStore;
+        centers.clear();
+        corners.clear();
+        edges.clear();
+        centers.ensureCapacity(p.size);
+        for (int i = 0; i < p.size; i++) {
+            Center center = new Center(new Point(p.x[i], p.y[i]));
+            center.index = i;
+            centers.add(center);
+        }
+        corners.ensureCapacity(q.size);
+        for (int i = 0; i < q.size; i++) {
+            Corner c = new Corner();
+            c.index = i;
+            c.loc = new Point(q.x[i], q.y[i]);
+            c.border = q.is(i, CornerStore.BORDER);
+            corners.add(c);
+        }
+        edges.ensureCapacity(s.size);
+        for (int i = 0; i < s.size; i++) {
+            Edge e = new Edge();
+            e.index = i;
+            e.d0 = centers.get(s.d0[i]);
+            e.d1 = centers.get(s.d1[i]);
+            if (s.v0[i] >= 0 && s.v1[i] >= 0) {
+                e.setVornoi(corners.get(s.v0[i]), corners.get(s.v1[i]));
+            } else {
+                e.v0 = s.v0[i] < 0 ? null : corners.get(s.v0[i]);
+                e.v1 = s.v1[i] < 0 ? null : corners.get(s.v1[i]);
             }
-            center.moisture = total / center.corners.size();
+            edges.add(e);
+        }
+
+        for (Center center : centers) {
+            addAll(center.neighbors, p.neighbors, center.index, centers);
+            addAll(center.corners, p.corners, center.index, corners);
+            addAll(center.borders, p.borders, center.index, edges);
+        }
+        for (Corner c : corners) {
+            addAll(c.touches, q.touches, c.index, centers);
+            addAll(c.adjacent, q.adjacent, c.index, corners);
+            addAll(c.protrudes, q.protrudes, c.index, edges);
+        }
+    }
+
+    private void copyAttributes() {
+        final CenterStore p = centerStore;
+        final CornerStore q = cornerStore;
+        centers.parallelStream().forEach(center -> {
+            int i = center.index;
+            center.border = p.is(i, CenterStore.BORDER);
+            center.ocean = p.is(i, CenterStore.OCEAN);
+            center.water = p.is(i, CenterStore.WATER);
+            center.coast = p.is(i, CenterStore.COAST);
+            center.elevation = p.elevation[i];
+            center.moisture = p.moisture[i];
+        });
+        corners.parallelStream().forEach(c -> {
+            int i = c.index;
+            c.ocean = q.is(i, CornerStore.OCEAN);
+            c.water = q.is(i, CornerStore.WATER);
+            c.coast = q.is(i, CornerStore.COAST);
+            c.elevation = q.elevation[i];
+            c.moisture = q.moisture[i];
+            c.river = q.river[i];
+            c.downslope = q.downslope[i] < 0 ? null : corners.get(q.downslope[i]);
+            c.watershed = q.watershed[i] < 0 ? null : corners.get(q.watershed[i]);
+            c.watershedSize = q.watershedSize[i];
+        });
+        edges.parallelStream().forEach(e -> e.river = edgeStore.river[e.index]);
+    }
+
+    private static <T> void addAll(ArrayList<T> list, Adjacency links, int i, ArrayList<T> all) {
+        list.ensureCapacity(links.size(i));
+        for (int k = links.start(i); k < links.end(i); k++) {
+            list.add(all.get(links.target(k)));
         }
     }
 
     private void assignBiomes() {
+        final IBiomeClassifier classifier = biomeClassifier;
+        centers.parallelStream().forEach(center -> center.biome = classifier.getBiome(center));
+        final CenterStore p = getCenterStore();
+        // the classifier may have brought its own kind of biomes
+        p.biomes = null;
         for (Center center : centers) {
-            center.biome = getBiome(center);
+            p.setBiome(center.index, center.biome);
+        }
+    }
+
+    /**
+     * @return the centers as flat arrays; a restored graph builds them from
+     * the objects on first use
+     */
+    public CenterStore getCenterStore() {
+        if (centerStore == null) {
+            centerStore = new CenterStore(centers);
+        }
+        return centerStore;
+    }
+
+    public CornerStore getCornerStore() {
+        if (cornerStore == null) {
+            cornerStore = new CornerStore(corners);
+        }
+        return cornerStore;
+    }
+
+    public PointIndex getCenterIndex() {
+        if (centerIndex == null) {
+            centerIndex = new PointIndex(getCenterStore().x, getCenterStore().y, bounds);
+        }
+        return centerIndex;
+    }
+
+    public PointIndex getCornerIndex() {
+        if (cornerIndex == null) {
+            cornerIndex = new PointIndex(getCornerStore().x, getCornerStore().y, bounds);
+        }
+        return cornerIndex;
+    }
+
+    /**
+     * @return the center whose polygon contains the point, or the one with
+     * the nearest site where none does, e.g. outside the bounds
+     */
+    public Center centerAt(double x, double y) {
+        int i = getCenterIndex().nearest(x, y);
+        if (i < 0) {
+            return null;
+        }
+        // the corners were moved away from the voronoi vertices, so the
+        // polygon of the nearest site may have given the point to a neighbor
+        Center nearest = centers.get(i);
+        if (inPolygon(nearest, x, y)) {
+            return nearest;
+        }
+        for (Center n : nearest.neighbors) {
+            if (inPolygon(n, x, y)) {
+                return n;
+            }
+        }
+        return nearest;
+    }
+
+    private static boolean inPolygon(Center c, double x, double y) {
+        for (Edge e : c.borders) {
+            if (e.v0 != null && e.v1 != null && inTriangle(c.loc, e.v0.loc, e.v1.loc, x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean inTriangle(Point a, Point b, Point c, double x, double y) {
+        double d1 = (x - b.x) * (a.y - b.y) - (a.x - b.x) * (y - b.y);
+        double d2 = (x - c.x) * (b.y - c.y) - (b.x - c.x) * (y - c.y);
+        double d3 = (x - a.x) * (c.y - a.y) - (c.x - a.x) * (y - a.y);
+        return !((d1 < 0 || d2 < 0 || d3 < 0) && (d1 > 0 || d2 > 0 || d3 > 0));
+    }
+
+    /**
+     * @return the centers whose sites lie within the rectangle
+     */
+    public List<Center> centersInRect(Rectangle rect) {
+        int[] found = getCenterIndex().inRect(rect);
+        List<Center> list = new ArrayList<>(found.length);
+        for (int i : found) {
+            list.add(centers.get(i));
+        }
+        return list;
+    }
+
+    /**
+     * @return an image with every center's polygon drawn in the color whose
+     * RGB value is the center's index; drawn on first use
+     */
+    public BufferedImage getPixelCenterMap() {
+        if (pixelCenterMap == null) {
+            BufferedImage image = new BufferedImage((int) bounds.width, (int) bounds.width, BufferedImage.TYPE_4BYTE_ABGR);
+            Graphics2D g = image.createGraphics();
+            for (Center c : centers) {
+                drawPolygon(g, c, new Color(c.index));
+            }
+            g.dispose();
+            pixelCenterMap = image;
+        }
+        return pixelCenterMap;
+    }
+
+    public EdgeStore getEdgeStore() {
+        if (edgeStore == null) {
+            edgeStore = new EdgeStore(edges);
         }
+        return edgeStore;
     }
 }
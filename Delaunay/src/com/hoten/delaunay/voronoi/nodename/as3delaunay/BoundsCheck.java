@@ -0,0 +1,39 @@
+package com.hoten.delaunay.voronoi.nodename.as3delaunay;
+
+import com.hoten.delaunay.geom.Point;
+import com.hoten.delaunay.geom.Rectangle;
+
+final class BoundsCheck {
+
+    final public static int TOP = 1;
+    final public static int BOTTOM = 2;
+    final public static int LEFT = 4;
+    final public static int RIGHT = 8;
+
+    public BoundsCheck() {
+        throw new Error("BoundsCheck constructor unused");
+    }
+
+    /**
+     * @param point
+     * @param bounds
+     * @return an int with the appropriate bits set if the Point lies on the
+     * corresponding bounds lines
+     */
+    public static int check(Point point, Rectangle bounds) {
+        int value = 0;
+        if (point.x == bounds.left) {
+            value |= LEFT;
+        }
+        if (point.x == bounds.right) {
+            value |= RIGHT;
+        }
+        if (point.y == bounds.top) {
+            value |= TOP;
+        }
+        if (point.y == bounds.bottom) {
+            value |= BOTTOM;
+        }
+        return value;
+    }
+}
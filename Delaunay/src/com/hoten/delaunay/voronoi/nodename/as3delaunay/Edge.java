@@ -4,7 +4,6 @@ import com.hoten.delaunay.geom.Point;
 import com.hoten.delaunay.geom.Rectangle;
 
 import java.util.HashMap;
-import java.util.Stack;
 
 /**
  * The line segment connecting the two Sites is part of the Delaunay
@@ -15,9 +14,7 @@ import java.util.Stack;
  */
 public final class Edge {
 
-    final public static Edge DELETED = new Edge();
-    final private static Stack<Edge> _pool = new Stack<>();
-    private static int _nedges = 0;
+    final public static Edge DELETED = new Edge(-1);
     // the equation of the edge: ax + by = c
     public double a, b, c;
     // the two Voronoi vertices that the edge connects
@@ -27,12 +24,16 @@ public final class Edge {
     // Once clipVertices() is called, this Dictionary will hold two Points
     // representing the clipped coordinates of the left and right ends...
     private HashMap<LR, Point> _clippedVertices;
+    // ...and which of those ends still coincide with a Vertex of the sweep
+    // (null where the edge was cut off at the bounds)
+    private Vertex _leftClippedVertex;
+    private Vertex _rightClippedVertex;
     // the two input Sites for which this Edge is a bisector:
     private HashMap<LR, Site> _sites;
     private int _edgeIndex;
 
-    private Edge() {
-        _edgeIndex = _nedges++;
+    private Edge(int edgeIndex) {
+        _edgeIndex = edgeIndex;
         init();
     }
 
@@ -41,9 +42,10 @@ public final class Edge {
      *
      * @param site0
      * @param site1
+     * @param edgeIndex index of the new Edge within its Voronoi
      * @return
      */
-    public static Edge createBisectingEdge(Site site0, Site site1) {
+    public static Edge createBisectingEdge(Site site0, Site site1, int edgeIndex) {
         double dx, dy, absdx, absdy;
         double a, b, c;
 
@@ -62,7 +64,7 @@ public final class Edge {
             c /= dy;
         }
 
-        Edge edge = Edge.create();
+        Edge edge = new Edge(edgeIndex);
 
         edge.set_leftSite(site0);
         edge.set_rightSite(site1);
@@ -80,17 +82,6 @@ public final class Edge {
         return edge;
     }
 
-    private static Edge create() {
-        Edge edge;
-        if (_pool.size() > 0) {
-            edge = _pool.pop();
-            edge.init();
-        } else {
-            edge = new Edge();
-        }
-        return edge;
-    }
-
     public static double compareSitesDistances_MAX(Edge edge0, Edge edge1) {
         double length0 = edge0.sitesDistance();
         double length1 = edge1.sitesDistance();
@@ -193,6 +184,15 @@ public final class Edge {
         return _clippedVertices;
     }
 
+    /**
+     * @param leftRight
+     * @return the Vertex that the clipped end coincides with, or null if
+     * that end lies on the bounds (or the edge is not visible)
+     */
+    public Vertex clippedVertex(LR leftRight) {
+        return (leftRight == LR.LEFT) ? _leftClippedVertex : _rightClippedVertex;
+    }
+
     public boolean get_visible() {
         return _clippedVertices != null;
     }
@@ -225,14 +225,14 @@ public final class Edge {
          }*/
         _leftVertex = null;
         _rightVertex = null;
+        _leftClippedVertex = null;
+        _rightClippedVertex = null;
         if (_clippedVertices != null) {
             _clippedVertices.clear();
             _clippedVertices = null;
         }
         _sites.clear();
         _sites = null;
-
-        _pool.push(this);
     }
 
     private void init() {
@@ -260,6 +260,7 @@ public final class Edge {
 
         Vertex vertex0, vertex1;
         double x0, x1, y0, y1;
+        boolean atVertex0 = false, atVertex1 = false;
 
         if (a == 1.0 && b >= 0.0) {
             vertex0 = _rightVertex;
@@ -273,6 +274,7 @@ public final class Edge {
             y0 = ymin;
             if (vertex0 != null && vertex0.get_y() > ymin) {
                 y0 = vertex0.get_y();
+                atVertex0 = true;
             }
             if (y0 > ymax) {
                 return;
@@ -282,6 +284,7 @@ public final class Edge {
             y1 = ymax;
             if (vertex1 != null && vertex1.get_y() < ymax) {
                 y1 = vertex1.get_y();
+                atVertex1 = true;
             }
             if (y1 < ymin) {
                 return;
@@ -295,22 +298,27 @@ public final class Edge {
             if (x0 > xmax) {
                 x0 = xmax;
                 y0 = (c - x0) / b;
+                atVertex0 = false;
             } else if (x0 < xmin) {
                 x0 = xmin;
                 y0 = (c - x0) / b;
+                atVertex0 = false;
             }
 
             if (x1 > xmax) {
                 x1 = xmax;
                 y1 = (c - x1) / b;
+                atVertex1 = false;
             } else if (x1 < xmin) {
                 x1 = xmin;
                 y1 = (c - x1) / b;
+                atVertex1 = false;
             }
         } else {
             x0 = xmin;
             if (vertex0 != null && vertex0.get_x() > xmin) {
                 x0 = vertex0.get_x();
+                atVertex0 = true;
             }
             if (x0 > xmax) {
                 return;
@@ -320,6 +328,7 @@ public final class Edge {
             x1 = xmax;
             if (vertex1 != null && vertex1.get_x() < xmax) {
                 x1 = vertex1.get_x();
+                atVertex1 = true;
             }
             if (x1 < xmin) {
                 return;
@@ -333,17 +342,21 @@ public final class Edge {
             if (y0 > ymax) {
                 y0 = ymax;
                 x0 = (c - y0) / a;
+                atVertex0 = false;
             } else if (y0 < ymin) {
                 y0 = ymin;
                 x0 = (c - y0) / a;
+                atVertex0 = false;
             }
 
             if (y1 > ymax) {
                 y1 = ymax;
                 x1 = (c - y1) / a;
+                atVertex1 = false;
             } else if (y1 < ymin) {
                 y1 = ymin;
                 x1 = (c - y1) / a;
+                atVertex1 = false;
             }
         }
 
@@ -351,9 +364,13 @@ public final class Edge {
         if (vertex0 == _leftVertex) {
             _clippedVertices.put(LR.LEFT, new Point(x0, y0));
             _clippedVertices.put(LR.RIGHT, new Point(x1, y1));
+            _leftClippedVertex = atVertex0 ? vertex0 : null;
+            _rightClippedVertex = atVertex1 ? vertex1 : null;
         } else {
             _clippedVertices.put(LR.RIGHT, new Point(x0, y0));
             _clippedVertices.put(LR.LEFT, new Point(x1, y1));
+            _rightClippedVertex = atVertex0 ? vertex0 : null;
+            _leftClippedVertex = atVertex1 ? vertex1 : null;
         }
     }
 }
\ No newline at end of file
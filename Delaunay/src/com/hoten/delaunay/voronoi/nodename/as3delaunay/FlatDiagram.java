@@ -0,0 +1,176 @@
+package com.hoten.delaunay.voronoi.nodename.as3delaunay;
+
+import com.hoten.delaunay.geom.Point;
+import com.hoten.delaunay.geom.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Compact, struct-of-arrays copy of a Voronoi diagram: every coordinate is
+ * a double in a flat array and every reference is an int index, so that
+ * consumers can walk the diagram without a Point per coordinate.
+ * <p>
+ * Sites are numbered like {@link Voronoi#siteCoords()}. Vertex i sits at
+ * (vertexX[i], vertexY[i]); the ends of visible edges come first
+ * ({@link #numEdgeVertices} of them), one per Vertex of the sweep plus one
+ * per end that was cut off at the plot bounds. The corners of the plot
+ * bounds follow, and only if some region needs them. Edge i separates
+ * edgeSite0[i] and edgeSite1[i] (the Delaunay edge) and runs from
+ * edgeVertex0[i] to edgeVertex1[i] (the clipped Voronoi edge, both -1 when
+ * it is not visible). The region of site i is the counterclockwise polygon
+ * regionVertices[regionOffsets[i] .. regionOffsets[i + 1] - 1].
+ */
+public final class FlatDiagram {
+
+    final public int numSites;
+    final public int numVertices;
+    final public int numEdgeVertices;
+    final public int numEdges;
+
+    final public double[] siteX, siteY;
+    final public double[] vertexX, vertexY;
+    final public int[] edgeVertex0, edgeVertex1;
+    final public int[] edgeSite0, edgeSite1;
+    final public int[] regionOffsets;
+    final public int[] regionVertices;
+
+    private double[] _vertexX, _vertexY;
+    private int _numVertices;
+
+    FlatDiagram(SiteList sites, ArrayList<Edge> edges, int nvertices, Rectangle plotBounds) {
+        numSites = sites.get_length();
+        numEdges = edges.size();
+
+        siteX = new double[numSites];
+        siteY = new double[numSites];
+        for (int i = 0; i < numSites; i++) {
+            Site site = sites.get(i);
+            siteX[i] = site.get_x();
+            siteY[i] = site.get_y();
+        }
+
+        _vertexX = new double[nvertices + 2 * numEdges + 4];
+        _vertexY = new double[_vertexX.length];
+        _numVertices = 0;
+
+        // every Vertex of the sweep becomes exactly one vertex here, no matter
+        // how many edges meet at it; ends cut off at the bounds are unique
+        int[] sweepVertexIds = new int[nvertices];
+        Arrays.fill(sweepVertexIds, -1);
+        IdentityHashMap<Point, Integer> endIds = new IdentityHashMap<>(2 * numEdges);
+
+        edgeVertex0 = new int[numEdges];
+        edgeVertex1 = new int[numEdges];
+        edgeSite0 = new int[numEdges];
+        edgeSite1 = new int[numEdges];
+        for (int i = 0; i < numEdges; i++) {
+            Edge edge = edges.get(i);
+            edgeSite0[i] = edge.get_leftSite().get_siteIndex();
+            edgeSite1[i] = edge.get_rightSite().get_siteIndex();
+            if (edge.get_visible()) {
+                edgeVertex0[i] = endId(edge, LR.LEFT, sweepVertexIds, endIds);
+                edgeVertex1[i] = endId(edge, LR.RIGHT, sweepVertexIds, endIds);
+            } else {
+                edgeVertex0[i] = edgeVertex1[i] = -1;
+            }
+        }
+        numEdgeVertices = _numVertices;
+
+        regionOffsets = new int[numSites + 1];
+        for (int i = 0; i < numSites; i++) {
+            regionOffsets[i + 1] = regionOffsets[i] + sites.get(i).region(plotBounds).size();
+        }
+        regionVertices = new int[regionOffsets[numSites]];
+        int[] boundsCornerIds = {-1, -1, -1, -1};
+        for (int i = 0; i < numSites; i++) {
+            int k = regionOffsets[i];
+            for (Point p : sites.get(i).region(plotBounds)) {
+                Integer id = endIds.get(p);
+                regionVertices[k++] = id != null ? id : boundsCornerId(p, plotBounds, boundsCornerIds);
+            }
+        }
+
+        numVertices = _numVertices;
+        vertexX = Arrays.copyOf(_vertexX, _numVertices);
+        vertexY = Arrays.copyOf(_vertexY, _numVertices);
+        _vertexX = _vertexY = null;
+    }
+
+    FlatDiagram(double[] siteX, double[] siteY, double[] vertexX, double[] vertexY, int numEdgeVertices,
+            int[] edgeVertex0, int[] edgeVertex1, int[] edgeSite0, int[] edgeSite1,
+            int[] regionOffsets, int[] regionVertices) {
+        this.numSites = siteX.length;
+        this.numVertices = vertexX.length;
+        this.numEdgeVertices = numEdgeVertices;
+        this.numEdges = edgeSite0.length;
+        this.siteX = siteX;
+        this.siteY = siteY;
+        this.vertexX = vertexX;
+        this.vertexY = vertexY;
+        this.edgeVertex0 = edgeVertex0;
+        this.edgeVertex1 = edgeVertex1;
+        this.edgeSite0 = edgeSite0;
+        this.edgeSite1 = edgeSite1;
+        this.regionOffsets = regionOffsets;
+        this.regionVertices = regionVertices;
+    }
+
+    private int endId(Edge edge, LR leftRight, int[] sweepVertexIds, IdentityHashMap<Point, Integer> endIds) {
+        Vertex vertex = edge.clippedVertex(leftRight);
+        Point end = edge.get_clippedEnds().get(leftRight);
+        int id;
+        if (vertex == null) {
+            id = addVertex(end.x, end.y);
+        } else {
+            id = sweepVertexIds[vertex.get_vertexIndex()];
+            if (id < 0) {
+                id = addVertex(vertex.get_x(), vertex.get_y());
+                sweepVertexIds[vertex.get_vertexIndex()] = id;
+            }
+        }
+        endIds.put(end, id);
+        return id;
+    }
+
+    // regions close up around the plot bounds by inserting its corners
+    private int boundsCornerId(Point p, Rectangle bounds, int[] boundsCornerIds) {
+        int corner = boundsCorner(p, bounds);
+        if (corner < 0) {
+            return addVertex(p.x, p.y);
+        }
+        if (boundsCornerIds[corner] < 0) {
+            boundsCornerIds[corner] = addVertex(p.x, p.y);
+        }
+        return boundsCornerIds[corner];
+    }
+
+    /**
+     * @return 0 to 3 for the top left, top right, bottom left and bottom right
+     * corner of the bounds, -1 if p is not one of them
+     */
+    static int boundsCorner(Point p, Rectangle bounds) {
+        int check = BoundsCheck.check(p, bounds);
+        boolean onVerticalSide = (check & (BoundsCheck.LEFT | BoundsCheck.RIGHT)) != 0;
+        boolean onHorizontalSide = (check & (BoundsCheck.TOP | BoundsCheck.BOTTOM)) != 0;
+        if (!onVerticalSide || !onHorizontalSide) {
+            return -1;
+        }
+        return ((check & BoundsCheck.RIGHT) != 0 ? 1 : 0) + ((check & BoundsCheck.BOTTOM) != 0 ? 2 : 0);
+    }
+
+    private int addVertex(double x, double y) {
+        if (_numVertices == _vertexX.length) {
+            _vertexX = Arrays.copyOf(_vertexX, 2 * _numVertices);
+            _vertexY = Arrays.copyOf(_vertexY, 2 * _numVertices);
+        }
+        _vertexX[_numVertices] = x;
+        _vertexY[_numVertices] = y;
+        return _numVertices++;
+    }
+
+    public int regionSize(int siteIndex) {
+        return regionOffsets[siteIndex + 1] - regionOffsets[siteIndex];
+    }
+}
@@ -2,13 +2,12 @@ package com.hoten.delaunay.voronoi.nodename.as3delaunay;
 
 import com.hoten.delaunay.geom.Point;
 
-import java.util.Stack;
-
 public final class Halfedge {
 
-    private static Stack<Halfedge> _pool = new Stack<>();
     public Halfedge edgeListLeftNeighbor, edgeListRightNeighbor;
     public Halfedge nextInPriorityQueue;
+    // position in a HalfedgeHeap, -1 while not queued there
+    public int heapIndex = -1;
     public Edge edge;
     public LR leftRight;
     public Vertex vertex;
@@ -20,11 +19,7 @@ public final class Halfedge {
     }
 
     public static Halfedge create(Edge edge, LR lr) {
-        if (_pool.size() > 0) {
-            return _pool.pop().init(edge, lr);
-        } else {
-            return new Halfedge(edge, lr);
-        }
+        return new Halfedge(edge, lr);
     }
 
     public static Halfedge createDummy() {
@@ -35,6 +30,7 @@ public final class Halfedge {
         this.edge = edge;
         leftRight = lr;
         nextInPriorityQueue = null;
+        heapIndex = -1;
         vertex = null;
         return this;
     }
@@ -49,24 +45,23 @@ public final class Halfedge {
             // still in EdgeList
             return;
         }
-        if (nextInPriorityQueue != null) {
+        if (nextInPriorityQueue != null || heapIndex >= 0) {
             // still in PriorityQueue
             return;
         }
         edge = null;
         leftRight = null;
         vertex = null;
-        _pool.push(this);
     }
 
     public void reallyDispose() {
         edgeListLeftNeighbor = null;
         edgeListRightNeighbor = null;
         nextInPriorityQueue = null;
+        heapIndex = -1;
         edge = null;
         leftRight = null;
         vertex = null;
-        _pool.push(this);
     }
 
     public boolean isLeftOf(Point p) {
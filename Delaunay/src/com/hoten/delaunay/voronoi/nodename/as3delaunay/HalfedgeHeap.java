@@ -0,0 +1,129 @@
+package com.hoten.delaunay.voronoi.nodename.as3delaunay;
+
+import com.hoten.delaunay.geom.Point;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary heap alternative to the bucketed HalfedgePriorityQueue.
+ * Every queued Halfedge remembers its slot in heapIndex, so insert, remove
+ * and extractMin are O(log n) however the sites are distributed.
+ */
+public final class HalfedgeHeap implements IHalfedgePriorityQueue {
+
+    private Halfedge[] _heap;
+    private int _count;
+
+    public HalfedgeHeap(int sqrt_nsites) {
+        _heap = new Halfedge[Math.max(16, 4 * sqrt_nsites)];
+        _count = 0;
+    }
+
+    @Override
+    public void dispose() {
+        for (int i = 0; i < _count; ++i) {
+            _heap[i].heapIndex = -1;
+        }
+        _heap = null;
+    }
+
+    @Override
+    public void insert(Halfedge halfEdge) {
+        if (_count == _heap.length) {
+            _heap = Arrays.copyOf(_heap, 2 * _count);
+        }
+        _heap[_count] = halfEdge;
+        halfEdge.heapIndex = _count;
+        siftUp(_count++);
+    }
+
+    @Override
+    public void remove(Halfedge halfEdge) {
+        int i = halfEdge.heapIndex;
+        if (i >= 0) {
+            Halfedge last = _heap[--_count];
+            _heap[_count] = null;
+            if (i < _count) {
+                _heap[i] = last;
+                last.heapIndex = i;
+                siftDown(siftUp(i));
+            }
+            halfEdge.heapIndex = -1;
+            halfEdge.vertex = null;
+            halfEdge.dispose();
+        }
+    }
+
+    @Override
+    public boolean empty() {
+        return _count == 0;
+    }
+
+    /**
+     * @return coordinates of the Halfedge's vertex in V*, the transformed
+     * Voronoi diagram
+     */
+    @Override
+    public Point min() {
+        Halfedge answer = _heap[0];
+        return new Point(answer.vertex.get_x(), answer.ystar);
+    }
+
+    /**
+     * remove and return the min Halfedge
+     *
+     * @return
+     */
+    @Override
+    public Halfedge extractMin() {
+        Halfedge answer = _heap[0];
+        Halfedge last = _heap[--_count];
+        _heap[_count] = null;
+        if (_count > 0) {
+            _heap[0] = last;
+            last.heapIndex = 0;
+            siftDown(0);
+        }
+        answer.heapIndex = -1;
+        return answer;
+    }
+
+    private static boolean less(Halfedge a, Halfedge b) {
+        return a.ystar < b.ystar || (a.ystar == b.ystar && a.vertex.get_x() < b.vertex.get_x());
+    }
+
+    private int siftUp(int i) {
+        Halfedge halfEdge = _heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(halfEdge, _heap[parent])) {
+                break;
+            }
+            _heap[i] = _heap[parent];
+            _heap[i].heapIndex = i;
+            i = parent;
+        }
+        _heap[i] = halfEdge;
+        halfEdge.heapIndex = i;
+        return i;
+    }
+
+    private void siftDown(int i) {
+        Halfedge halfEdge = _heap[i];
+        int half = _count >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < _count && less(_heap[child + 1], _heap[child])) {
+                child++;
+            }
+            if (!less(_heap[child], halfEdge)) {
+                break;
+            }
+            _heap[i] = _heap[child];
+            _heap[i].heapIndex = i;
+            i = child;
+        }
+        _heap[i] = halfEdge;
+        halfEdge.heapIndex = i;
+    }
+}
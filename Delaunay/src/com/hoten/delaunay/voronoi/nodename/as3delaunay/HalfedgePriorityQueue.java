@@ -4,7 +4,7 @@ import com.hoten.delaunay.geom.Point;
 
 import java.util.ArrayList;
 
-public final class HalfedgePriorityQueue // also known as heap
+public final class HalfedgePriorityQueue implements IHalfedgePriorityQueue // also known as heap
 {
 
     private ArrayList<Halfedge> _hash;
@@ -21,6 +21,7 @@ public final class HalfedgePriorityQueue // also known as heap
         initialize();
     }
 
+    @Override
     public void dispose() {
         // get rid of dummies
         for (int i = 0; i < _hashsize; ++i) {
@@ -43,6 +44,7 @@ public final class HalfedgePriorityQueue // also known as heap
         }
     }
 
+    @Override
     public void insert(Halfedge halfEdge) {
         Halfedge previous, next;
         int insertionBucket = bucket(halfEdge);
@@ -59,6 +61,7 @@ public final class HalfedgePriorityQueue // also known as heap
         ++_count;
     }
 
+    @Override
     public void remove(Halfedge halfEdge) {
         Halfedge previous;
         int removalBucket = bucket(halfEdge);
@@ -101,6 +104,7 @@ public final class HalfedgePriorityQueue // also known as heap
         }
     }
 
+    @Override
     public boolean empty() {
         return _count == 0;
     }
@@ -109,6 +113,7 @@ public final class HalfedgePriorityQueue // also known as heap
      * @return coordinates of the Halfedge's vertex in V*, the transformed
      * Voronoi diagram
      */
+    @Override
     public Point min() {
         adjustMinBucket();
         Halfedge answer = _hash.get(_minBucket).nextInPriorityQueue;
@@ -120,6 +125,7 @@ public final class HalfedgePriorityQueue // also known as heap
      *
      * @return
      */
+    @Override
     public Halfedge extractMin() {
         Halfedge answer;
 
@@ -0,0 +1,20 @@
+package com.hoten.delaunay.voronoi.nodename.as3delaunay;
+
+import com.hoten.delaunay.geom.Point;
+
+/**
+ * The event queue of the sweep: Halfedges ordered by the y-coordinate of
+ * their vertex in V*, ties broken by the vertex's x-coordinate
+ */
+public interface IHalfedgePriorityQueue extends IDisposable {
+
+    void insert(Halfedge halfEdge);
+
+    void remove(Halfedge halfEdge);
+
+    boolean empty();
+
+    Point min();
+
+    Halfedge extractMin();
+}
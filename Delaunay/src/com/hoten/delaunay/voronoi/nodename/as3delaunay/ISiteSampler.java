@@ -0,0 +1,20 @@
+package com.hoten.delaunay.voronoi.nodename.as3delaunay;
+
+import com.hoten.delaunay.geom.Point;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Places the sites of a diagram inside [0, width) x [0, height)
+ */
+public interface ISiteSampler {
+
+    ArrayList<Point> sample(int numSites, double width, double height, Random r);
+
+    /**
+     * @return whether the sites come out evenly spaced already, so that the
+     * Lloyd relaxation can be skipped
+     */
+    boolean wellSpaced();
+}
@@ -0,0 +1,751 @@
+package com.hoten.delaunay.voronoi.nodename.as3delaunay;
+
+import com.hoten.delaunay.geom.Point;
+import com.hoten.delaunay.geom.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Lloyd relaxation that carries the Delaunay triangulation of the sites from
+ * one iteration to the next instead of sweeping a new Voronoi every time.
+ * <p>
+ * Each iteration clips the plot bounds with the bisectors between a site and
+ * its Delaunay neighbors to get the site's region, moves the site to the
+ * region's area weighted centroid and then repairs the triangulation in place: triangles
+ * are added where the hull stopped being convex and edges are flipped until
+ * every edge is locally Delaunay again. Only when a move turns a triangle
+ * over is the triangulation rebuilt with a fresh sweep. Relaxation stops
+ * early once no site moves farther than a given distance.
+ */
+public final class LloydRelaxation {
+
+    // how often a held back site may stop short before giving up
+    final private static int MAX_STEPS = 64;
+    // sites per parallel task when computing centroids
+    final private static int CENTROID_BLOCK = 1024;
+
+    private final Rectangle _plotBounds;
+    private int _nsites;
+    private double[] _x, _y;
+    // three sites per triangle, wound so that orient() is positive
+    private int[] _triangles;
+    // triangle across the edge opposite each corner of _triangles, -1 on the hull
+    private int[] _neighbors;
+    private int _ntriangles;
+    // some triangle each site is a corner of
+    private int[] _siteTriangles;
+    // pairs of neighboring sites, only kept when the sites have no triangles
+    private int[] _delaunayEdges;
+
+    private int _iterations;
+    private int _sweeps;
+    private double _maxDisplacement;
+
+    // corners of the triangles around a site, see star()
+    private int[] _star = new int[16];
+
+    public LloydRelaxation(Voronoi v) {
+        _plotBounds = v.get_plotBounds();
+        load(v);
+    }
+
+    /**
+     * Runs up to maxIterations Lloyd iterations.
+     *
+     * @param minDisplacement stop as soon as no site moved farther than this
+     * @return the number of iterations that were run
+     */
+    public int relax(int maxIterations, double minDisplacement) {
+        int[] offsets = new int[_nsites + 1];
+        int[] adjacent = new int[0];
+        for (int i = 0; i < maxIterations; i++) {
+            adjacent = neighborSites(offsets, adjacent);
+            double[] cx = new double[_nsites];
+            double[] cy = new double[_nsites];
+            centroids(offsets, adjacent, cx, cy);
+            double[] x = _x, y = _y;
+            double maxDisplacement = IntStream.range(0, _nsites).parallel()
+                    .mapToDouble(site -> Math.hypot(cx[site] - x[site], cy[site] - y[site]))
+                    .max().orElse(0);
+            _maxDisplacement = maxDisplacement;
+            _iterations++;
+
+            if (!moveSites(cx, cy)) {
+                System.arraycopy(cx, 0, _x, 0, _nsites);
+                System.arraycopy(cy, 0, _y, 0, _nsites);
+                Voronoi v = new Voronoi(siteCoords(), null, _plotBounds);
+                load(v);
+                v.dispose();
+                _sweeps++;
+            }
+            if (maxDisplacement < minDisplacement) {
+                break;
+            }
+        }
+        return _iterations;
+    }
+
+    public ArrayList<Point> siteCoords() {
+        ArrayList<Point> points = new ArrayList<>(_nsites);
+        for (int i = 0; i < _nsites; i++) {
+            points.add(new Point(_x[i], _y[i]));
+        }
+        return points;
+    }
+
+    /**
+     * @return a new Voronoi of the relaxed sites
+     */
+    public Voronoi voronoi() {
+        return new Voronoi(siteCoords(), null, _plotBounds);
+    }
+
+    public int get_iterations() {
+        return _iterations;
+    }
+
+    /**
+     * @return how often the triangulation had to be rebuilt by a sweep
+     */
+    public int get_sweeps() {
+        return _sweeps;
+    }
+
+    /**
+     * @return the farthest any site moved during the last iteration
+     */
+    public double get_maxDisplacement() {
+        return _maxDisplacement;
+    }
+
+    private void load(Voronoi v) {
+        ArrayList<Point> coords = v.siteCoords();
+        _nsites = coords.size();
+        _x = new double[_nsites];
+        _y = new double[_nsites];
+        for (int i = 0; i < _nsites; i++) {
+            _x[i] = coords.get(i).x;
+            _y[i] = coords.get(i).y;
+        }
+
+        _triangles = v.triangleSites();
+        _ntriangles = _triangles.length / 3;
+        _neighbors = new int[_triangles.length];
+        Arrays.fill(_neighbors, -1);
+        _siteTriangles = new int[_nsites];
+        for (int t = 0; t < _ntriangles; t++) {
+            int a = _triangles[3 * t], b = _triangles[3 * t + 1], c = _triangles[3 * t + 2];
+            if (orient(a, b, c) < 0) {
+                _triangles[3 * t + 1] = c;
+                _triangles[3 * t + 2] = b;
+            }
+            _siteTriangles[a] = _siteTriangles[b] = _siteTriangles[c] = t;
+        }
+
+        // triangle t of the sweep belongs to the Vertex with index t, so each
+        // Edge with two vertices links the two triangles sharing its sites
+        ArrayList<Edge> edges = v.edges();
+        _delaunayEdges = null;
+        if (_ntriangles == 0) {
+            _delaunayEdges = new int[2 * edges.size()];
+        }
+        for (int i = 0; i < edges.size(); i++) {
+            Edge edge = edges.get(i);
+            int s0 = edge.get_leftSite().get_siteIndex();
+            int s1 = edge.get_rightSite().get_siteIndex();
+            if (_delaunayEdges != null) {
+                _delaunayEdges[2 * i] = s0;
+                _delaunayEdges[2 * i + 1] = s1;
+            } else if (edge.get_leftVertex() != null && edge.get_rightVertex() != null) {
+                int t0 = edge.get_leftVertex().get_vertexIndex();
+                int t1 = edge.get_rightVertex().get_vertexIndex();
+                _neighbors[3 * t0 + oppositeCorner(t0, s0, s1)] = t1;
+                _neighbors[3 * t1 + oppositeCorner(t1, s0, s1)] = t0;
+            }
+        }
+    }
+
+    private int oppositeCorner(int t, int s0, int s1) {
+        for (int k = 0; k < 3; k++) {
+            int site = _triangles[3 * t + k];
+            if (site != s0 && site != s1) {
+                return k;
+            }
+        }
+        throw new Error("LloydRelaxation: sites " + s0 + " and " + s1 + " are not an edge of triangle " + t);
+    }
+
+    /**
+     * Fills offsets and returns the Delaunay neighbors of each site, site i's
+     * being adjacent[offsets[i] .. offsets[i + 1] - 1].
+     */
+    private int[] neighborSites(int[] offsets, int[] adjacent) {
+        Arrays.fill(offsets, 0);
+        if (_delaunayEdges != null) {
+            for (int site : _delaunayEdges) {
+                offsets[site + 1]++;
+            }
+        } else {
+            // around a site every neighbor follows it in exactly one triangle,
+            // except for the last one along the hull, which only precedes it
+            for (int i = 0; i < 3 * _ntriangles; i++) {
+                offsets[_triangles[i] + 1]++;
+                if (_neighbors[next(i)] < 0) {
+                    offsets[_triangles[i] + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < _nsites; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        if (adjacent.length < offsets[_nsites]) {
+            adjacent = new int[offsets[_nsites]];
+        }
+        int[] fill = Arrays.copyOf(offsets, _nsites);
+        if (_delaunayEdges != null) {
+            for (int i = 0; i < _delaunayEdges.length; i += 2) {
+                adjacent[fill[_delaunayEdges[i]]++] = _delaunayEdges[i + 1];
+                adjacent[fill[_delaunayEdges[i + 1]]++] = _delaunayEdges[i];
+            }
+        } else {
+            for (int i = 0; i < 3 * _ntriangles; i++) {
+                int site = _triangles[i];
+                adjacent[fill[site]++] = _triangles[next(i)];
+                if (_neighbors[next(i)] < 0) {
+                    adjacent[fill[site]++] = _triangles[next(next(i))];
+                }
+            }
+        }
+        return adjacent;
+    }
+
+    /**
+     * Writes the centroid of every site's region to (cx[i], cy[i]). Only reads
+     * the current sites, so blocks of sites are done in parallel.
+     */
+    private void centroids(int[] offsets, int[] adjacent, double[] cx, double[] cy) {
+        int nblocks = (_nsites + CENTROID_BLOCK - 1) / CENTROID_BLOCK;
+        IntStream.range(0, nblocks).parallel().forEach(block -> {
+            RegionClipper clipper = new RegionClipper(_x, _y, _plotBounds);
+            int end = Math.min(_nsites, (block + 1) * CENTROID_BLOCK);
+            for (int site = block * CENTROID_BLOCK; site < end; site++) {
+                clipper.clip(site, adjacent, offsets[site], offsets[site + 1]);
+                clipper.centroid(site, cx, cy);
+            }
+        });
+    }
+
+    /**
+     * Moves the sites to (x[i], y[i]) and makes the triangulation Delaunay
+     * again.
+     * <p>
+     * Sites whose move would turn a triangle over are held back at first.
+     * Once the others are in place they are walked to their targets one at a
+     * time, flipping edges whenever a step would leave their star.
+     *
+     * @return false if the triangulation could not be repaired and has to be
+     * swept again
+     */
+    private boolean moveSites(double[] x, double[] y) {
+        if (_ntriangles == 0) {
+            return false;
+        }
+        double[] fromX = _x;
+        double[] fromY = _y;
+        _x = Arrays.copyOf(x, _nsites);
+        _y = Arrays.copyOf(y, _nsites);
+
+        boolean[] held = new boolean[_nsites];
+        int[] heldSites = new int[16];
+        int nheld = 0;
+        boolean inverted = true;
+        while (inverted) {
+            inverted = false;
+            for (int i = 0; i < 3 * _ntriangles; i += 3) {
+                if (orient(_triangles[i], _triangles[i + 1], _triangles[i + 2]) > 0) {
+                    continue;
+                }
+                inverted = true;
+                int before = nheld;
+                for (int k = i; k < i + 3; k++) {
+                    int site = _triangles[k];
+                    if (!held[site]) {
+                        held[site] = true;
+                        _x[site] = fromX[site];
+                        _y[site] = fromY[site];
+                        if (nheld == heldSites.length) {
+                            heldSites = Arrays.copyOf(heldSites, 2 * nheld);
+                        }
+                        heldSites[nheld++] = site;
+                    }
+                }
+                if (nheld == before) {
+                    return false;
+                }
+            }
+        }
+
+        if (!fillHull() || !flipEdges(allEdges(), -1)) {
+            return false;
+        }
+        if (nheld == 0) {
+            return true;
+        }
+        for (int i = 0; i < nheld; i++) {
+            int site = heldSites[i];
+            if (!moveSite(site, x[site], y[site])) {
+                return false;
+            }
+        }
+        int ntriangles = _ntriangles;
+        if (!fillHull() || (ntriangles != _ntriangles && !flipEdges(allEdges(), -1))) {
+            return false;
+        }
+        for (int i = 0; i < 3 * _ntriangles; i += 3) {
+            if (orient(_triangles[i], _triangles[i + 1], _triangles[i + 2]) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean moveSite(int site, double x, double y) {
+        for (int step = 0; step < MAX_STEPS; step++) {
+            int n = star(site);
+            if (n < 0) {
+                return false;
+            }
+            // orient() of each triangle around the site changes linearly
+            // along the way, stop halfway to the first one that turns over
+            double fraction = 1;
+            double px = _x[site], py = _y[site];
+            int blocking = -1;
+            for (int k = 0; k < n; k++) {
+                int corner = _star[k];
+                int b = _triangles[next(corner)];
+                int c = _triangles[next(next(corner))];
+                double before = orient(site, b, c);
+                _x[site] = x;
+                _y[site] = y;
+                double after = orient(site, b, c);
+                _x[site] = px;
+                _y[site] = py;
+                if (after <= 0 && 0.5 * before / (before - after) < fraction) {
+                    fraction = 0.5 * before / (before - after);
+                    blocking = corner;
+                }
+            }
+            // no flip helps with a triangle on the hull: it goes away and its
+            // sites become part of the hull themselves, fillHull() adds
+            // whatever triangles the hull needs once the sites are in place
+            if (blocking >= 0 && removableFromHull(blocking / 3)) {
+                removeTriangle(blocking / 3);
+                continue;
+            }
+            _x[site] = fraction == 1 ? x : px + fraction * (x - px);
+            _y[site] = fraction == 1 ? y : py + fraction * (y - py);
+
+            int[] stack = new int[3 * n];
+            for (int k = 0; k < n; k++) {
+                int t = _star[k] / 3;
+                stack[3 * k] = 3 * t;
+                stack[3 * k + 1] = 3 * t + 1;
+                stack[3 * k + 2] = 3 * t + 2;
+            }
+            if (!flipEdges(stack, stack.length)) {
+                return false;
+            }
+            if (fraction == 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fills _star with the corners of all triangles around the site.
+     *
+     * @return how many there are, or -1 if the neighbors are inconsistent and
+     * the walk around the site does not end
+     */
+    private int star(int site) {
+        int start = cornerOf(_siteTriangles[site], site);
+        int n = 0;
+        int corner = start;
+        // counterclockwise across the edge to the site's previous neighbor
+        do {
+            if (n == _star.length) {
+                if (n > 3 * _nsites) {
+                    return -1;
+                }
+                _star = Arrays.copyOf(_star, 2 * n);
+            }
+            _star[n++] = corner;
+            int t = _neighbors[next(corner)];
+            if (t < 0) {
+                corner = -1;
+                break;
+            }
+            corner = cornerOf(t, site);
+        } while (corner != start);
+        if (corner == start) {
+            return n;
+        }
+        // on the hull: the rest lies clockwise of the start
+        for (int t = _neighbors[next(next(start))]; t >= 0; ) {
+            corner = cornerOf(t, site);
+            if (n == _star.length) {
+                if (n > 3 * _nsites) {
+                    return -1;
+                }
+                _star = Arrays.copyOf(_star, 2 * n);
+            }
+            _star[n++] = corner;
+            t = _neighbors[next(next(corner))];
+        }
+        return n;
+    }
+
+    private int cornerOf(int t, int site) {
+        int corner = 3 * t;
+        while (_triangles[corner] != site) {
+            corner++;
+        }
+        return corner;
+    }
+
+    private int[] allEdges() {
+        int[] stack = new int[3 * _ntriangles];
+        int top = 0;
+        for (int i = 0; i < 3 * _ntriangles; i++) {
+            if (_neighbors[i] > i / 3) {
+                stack[top++] = i;
+            }
+        }
+        return Arrays.copyOf(stack, top);
+    }
+
+    // sites on the hull may have moved outwards, leaving dents between their
+    // neighbors; every dent gets a new triangle until the hull is convex
+    private boolean fillHull() {
+        int[] hullNext = new int[_nsites];
+        int[] hullPrev = new int[_nsites];
+        int[] hullEdge = new int[_nsites];
+        Arrays.fill(hullNext, -1);
+        int nhull = 0;
+        for (int i = 0; i < 3 * _ntriangles; i++) {
+            if (_neighbors[i] < 0) {
+                int from = _triangles[next(i)];
+                int to = _triangles[next(next(i))];
+                hullNext[from] = to;
+                hullPrev[to] = from;
+                hullEdge[from] = i;
+                nhull++;
+            }
+        }
+
+        int[] stack = new int[3 * nhull];
+        int top = 0;
+        for (int site = 0; site < _nsites; site++) {
+            if (hullNext[site] >= 0) {
+                stack[top++] = site;
+            }
+        }
+        while (top > 0) {
+            int b = stack[--top];
+            int a = hullPrev[b];
+            int c = hullNext[b];
+            if (hullNext[b] < 0 || a == c || orient(a, b, c) >= 0) {
+                continue;
+            }
+            if (hullSiteInside(a, b, c, hullNext)) {
+                return false;
+            }
+            int t = addTriangle(a, c, b);
+            _siteTriangles[a] = _siteTriangles[b] = _siteTriangles[c] = t;
+            link(3 * t, hullEdge[b]);
+            link(3 * t + 1, hullEdge[a]);
+            hullNext[a] = c;
+            hullPrev[c] = a;
+            hullEdge[a] = 3 * t + 2;
+            hullNext[b] = -1;
+            stack[top++] = a;
+            stack[top++] = c;
+        }
+        return true;
+    }
+
+    // does the dent (a, c, b) between consecutive hull sites a, b and c cover
+    // any other site of the hull?
+    private boolean hullSiteInside(int a, int b, int c, int[] hullNext) {
+        for (int site = hullNext[c]; site != a; site = hullNext[site]) {
+            if (orient(a, c, site) > 0 && orient(c, b, site) > 0 && orient(b, a, site) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Lawson's algorithm: flip every edge whose opposite site lies inside the
+    // circumcircle of the triangle on the other side, until none is left.
+    // Starts with the edges opposite the corners on the stack.
+    private boolean flipEdges(int[] stack, int top) {
+        if (top < 0) {
+            top = stack.length;
+        }
+        long maxFlips = 20L * _ntriangles + 100;
+        while (top > 0) {
+            int i = stack[--top];
+            int t = i / 3;
+            int u = _neighbors[i];
+            if (u < 0) {
+                continue;
+            }
+            int j = 3 * u;
+            while (_neighbors[j] != t) {
+                j++;
+            }
+            int p = _triangles[i];
+            int a = _triangles[next(i)];
+            int b = _triangles[next(next(i))];
+            int q = _triangles[j];
+            if (!inCircle(p, a, b, q)) {
+                continue;
+            }
+            if (--maxFlips < 0) {
+                return false;
+            }
+
+            // (p, a, b) and (q, b, a) become (p, a, q) and (q, b, p)
+            int ta = _neighbors[next(next(i))];
+            int tb = _neighbors[next(i)];
+            int ua = _neighbors[next(j)];
+            int ub = _neighbors[next(next(j))];
+            _triangles[3 * t] = p;
+            _triangles[3 * t + 1] = a;
+            _triangles[3 * t + 2] = q;
+            _triangles[3 * u] = q;
+            _triangles[3 * u + 1] = b;
+            _triangles[3 * u + 2] = p;
+            relink(3 * t, ua, u);
+            _neighbors[3 * t + 1] = u;
+            relink(3 * t + 2, ta, t);
+            relink(3 * u, tb, t);
+            _neighbors[3 * u + 1] = t;
+            relink(3 * u + 2, ub, u);
+            _siteTriangles[p] = _siteTriangles[a] = t;
+            _siteTriangles[q] = _siteTriangles[b] = u;
+
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length + 4);
+            }
+            stack[top++] = 3 * t;
+            stack[top++] = 3 * t + 2;
+            stack[top++] = 3 * u;
+            stack[top++] = 3 * u + 2;
+        }
+        return true;
+    }
+
+    // corner i now faces triangle other, which used to face triangle previous
+    private void relink(int i, int other, int previous) {
+        _neighbors[i] = other;
+        if (other >= 0) {
+            int j = 3 * other;
+            while (_neighbors[j] != previous) {
+                j++;
+            }
+            _neighbors[j] = i / 3;
+        }
+    }
+
+    // corners i and j face each other across the same edge
+    private void link(int i, int j) {
+        _neighbors[i] = j / 3;
+        _neighbors[j] = i / 3;
+    }
+
+    // a triangle with one edge on the hull can go if the site across from
+    // that edge is not on the hull yet; otherwise the triangles around that
+    // site would fall apart into two fans
+    private boolean removableFromHull(int t) {
+        int across = -1;
+        for (int i = 3 * t; i < 3 * t + 3; i++) {
+            if (_neighbors[i] < 0) {
+                if (across >= 0) {
+                    return false;
+                }
+                across = i;
+            }
+        }
+        return across >= 0 && !onHull(_triangles[across]);
+    }
+
+    private boolean onHull(int site) {
+        int start = cornerOf(_siteTriangles[site], site);
+        int corner = start;
+        do {
+            int t = _neighbors[next(corner)];
+            if (t < 0) {
+                return true;
+            }
+            corner = cornerOf(t, site);
+        } while (corner != start);
+        return false;
+    }
+
+    // the triangle must share an edge with another one at each of its corners
+    private void removeTriangle(int t) {
+        for (int i = 3 * t; i < 3 * t + 3; i++) {
+            int other = _neighbors[next(i)] >= 0 ? _neighbors[next(i)] : _neighbors[next(next(i))];
+            if (_siteTriangles[_triangles[i]] == t) {
+                _siteTriangles[_triangles[i]] = other;
+            }
+        }
+        for (int i = 3 * t; i < 3 * t + 3; i++) {
+            int other = _neighbors[i];
+            if (other >= 0) {
+                int j = 3 * other;
+                while (_neighbors[j] != t) {
+                    j++;
+                }
+                _neighbors[j] = -1;
+            }
+        }
+        int last = --_ntriangles;
+        if (t != last) {
+            for (int k = 0; k < 3; k++) {
+                _triangles[3 * t + k] = _triangles[3 * last + k];
+                relink(3 * t + k, _neighbors[3 * last + k], last);
+                if (_siteTriangles[_triangles[3 * t + k]] == last) {
+                    _siteTriangles[_triangles[3 * t + k]] = t;
+                }
+            }
+        }
+    }
+
+    private int addTriangle(int a, int b, int c) {
+        if (3 * _ntriangles + 3 > _triangles.length) {
+            _triangles = Arrays.copyOf(_triangles, 2 * _triangles.length + 3);
+            int length = _neighbors.length;
+            _neighbors = Arrays.copyOf(_neighbors, _triangles.length);
+            Arrays.fill(_neighbors, length, _neighbors.length, -1);
+        }
+        int t = _ntriangles++;
+        _triangles[3 * t] = a;
+        _triangles[3 * t + 1] = b;
+        _triangles[3 * t + 2] = c;
+        _neighbors[3 * t] = _neighbors[3 * t + 1] = _neighbors[3 * t + 2] = -1;
+        return t;
+    }
+
+    private static int next(int corner) {
+        return corner % 3 == 2 ? corner - 2 : corner + 1;
+    }
+
+    private double orient(int a, int b, int c) {
+        return (_x[b] - _x[a]) * (_y[c] - _y[a]) - (_y[b] - _y[a]) * (_x[c] - _x[a]);
+    }
+
+    // is d strictly inside the circumcircle of the positively oriented (a, b, c)?
+    private boolean inCircle(int a, int b, int c, int d) {
+        double adx = _x[a] - _x[d], ady = _y[a] - _y[d];
+        double bdx = _x[b] - _x[d], bdy = _y[b] - _y[d];
+        double cdx = _x[c] - _x[d], cdy = _y[c] - _y[d];
+        double det = (adx * adx + ady * ady) * (bdx * cdy - cdx * bdy)
+                + (bdx * bdx + bdy * bdy) * (cdx * ady - adx * cdy)
+                + (cdx * cdx + cdy * cdy) * (adx * bdy - bdx * ady);
+        return det > 0;
+    }
+
+    /**
+     * Clips the plot bounds with the bisectors between a site and its
+     * Delaunay neighbors, which leaves the site's region. Keeps its own
+     * scratch polygons, so every thread needs its own instance.
+     */
+    private static final class RegionClipper {
+
+        private final double[] _x, _y;
+        private final Rectangle _bounds;
+        private double[] _polyX = new double[16], _polyY = new double[16];
+        private double[] _clipX = new double[16], _clipY = new double[16];
+        private int _n;
+
+        RegionClipper(double[] x, double[] y, Rectangle bounds) {
+            _x = x;
+            _y = y;
+            _bounds = bounds;
+        }
+
+        void clip(int site, int[] adjacent, int from, int to) {
+            double px = _x[site], py = _y[site];
+            int n = 4;
+            _polyX[0] = _bounds.x;
+            _polyY[0] = _bounds.y;
+            _polyX[1] = _bounds.x + _bounds.width;
+            _polyY[1] = _bounds.y;
+            _polyX[2] = _bounds.x + _bounds.width;
+            _polyY[2] = _bounds.y + _bounds.height;
+            _polyX[3] = _bounds.x;
+            _polyY[3] = _bounds.y + _bounds.height;
+
+            for (int j = from; j < to && n > 0; j++) {
+                int other = adjacent[j];
+                double dx = _x[other] - px, dy = _y[other] - py;
+                double limit = dx * (px + 0.5 * dx) + dy * (py + 0.5 * dy);
+                if (_clipX.length < n + 1) {
+                    _clipX = new double[2 * n];
+                    _clipY = new double[2 * n];
+                }
+                int m = 0;
+                for (int k = 0; k < n; k++) {
+                    int l = k + 1 < n ? k + 1 : 0;
+                    double dk = dx * _polyX[k] + dy * _polyY[k] - limit;
+                    double dl = dx * _polyX[l] + dy * _polyY[l] - limit;
+                    if (dk <= 0) {
+                        _clipX[m] = _polyX[k];
+                        _clipY[m++] = _polyY[k];
+                    }
+                    if ((dk < 0 && dl > 0) || (dk > 0 && dl < 0)) {
+                        double s = dk / (dk - dl);
+                        _clipX[m] = _polyX[k] + s * (_polyX[l] - _polyX[k]);
+                        _clipY[m++] = _polyY[k] + s * (_polyY[l] - _polyY[k]);
+                    }
+                }
+                double[] swap = _polyX;
+                _polyX = _clipX;
+                _clipX = swap;
+                swap = _polyY;
+                _polyY = _clipY;
+                _clipY = swap;
+                n = m;
+            }
+            _n = n;
+        }
+
+        // area weighted, relative to the site to keep the products small;
+        // a region without area keeps the site where it is
+        void centroid(int site, double[] cx, double[] cy) {
+            double px = _x[site], py = _y[site];
+            double area = 0, x = 0, y = 0;
+            for (int k = 0; k < _n; k++) {
+                int l = k + 1 < _n ? k + 1 : 0;
+                double xk = _polyX[k] - px, yk = _polyY[k] - py;
+                double xl = _polyX[l] - px, yl = _polyY[l] - py;
+                double cross = xk * yl - xl * yk;
+                area += cross;
+                x += (xk + xl) * cross;
+                y += (yk + yl) * cross;
+            }
+            if (area == 0) {
+                cx[site] = px;
+                cy[site] = py;
+                return;
+            }
+            cx[site] = px + x / (3 * area);
+            cy[site] = py + y / (3 * area);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.hoten.delaunay.voronoi.nodename.as3delaunay;
+
+import com.hoten.delaunay.geom.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Blue noise sites from Bridson's Poisson disk sampling: no two sites are
+ * closer than a radius chosen for the requested number of sites, and no gap
+ * is left that could take another one. Grows out from one random site in
+ * O(n), checking candidates against a grid whose cells hold at most one
+ * site.
+ * <p>
+ * The number of sites comes out within a few percent of the one requested.
+ */
+public final class PoissonDiskSampler implements ISiteSampler {
+
+    // candidates tried around an active site before it is retired
+    final private static int CANDIDATES = 20;
+    final private static double COS_STEP = Math.cos(2 * Math.PI / CANDIDATES);
+    final private static double SIN_STEP = Math.sin(2 * Math.PI / CANDIDATES);
+    // how far outside the radius the candidates sit
+    final private static double EPSILON = 1e-7;
+    // sites per radius^2 of area that the sampling reaches
+    final private static double DENSITY = 0.86;
+
+    @Override
+    public ArrayList<Point> sample(int numSites, double width, double height, Random r) {
+        double radius = Math.sqrt(DENSITY * width * height / numSites);
+        double radius2 = radius * radius;
+        double cellSize = radius / Math.sqrt(2);
+        int columns = (int) Math.ceil(width / cellSize);
+        int rows = (int) Math.ceil(height / cellSize);
+        int[] grid = new int[columns * rows];
+        Arrays.fill(grid, -1);
+
+        int capacity = numSites + numSites / 8 + 1;
+        double[] xs = new double[capacity];
+        double[] ys = new double[capacity];
+        int[] active = new int[capacity];
+        int count = 0;
+        int numActive = 0;
+
+        xs[0] = r.nextDouble() * width;
+        ys[0] = r.nextDouble() * height;
+        grid[(int) (ys[0] / cellSize) * columns + (int) (xs[0] / cellSize)] = 0;
+        active[numActive++] = count++;
+
+        while (numActive > 0) {
+            int i = r.nextInt(numActive);
+            double px = xs[active[i]], py = ys[active[i]];
+            // Roberts' variant: the candidates sit just outside the radius at
+            // evenly spaced angles from one random start, which packs tighter
+            // and needs a single random number per try
+            double angle = 2 * Math.PI * r.nextDouble();
+            double cx = Math.cos(angle) * radius * (1 + EPSILON);
+            double cy = Math.sin(angle) * radius * (1 + EPSILON);
+            boolean found = false;
+            for (int k = 0; k < CANDIDATES && !found; k++) {
+                double x = px + cx;
+                double y = py + cy;
+                double rotated = cx * COS_STEP - cy * SIN_STEP;
+                cy = cx * SIN_STEP + cy * COS_STEP;
+                cx = rotated;
+                if (x < 0 || x >= width || y < 0 || y >= height) {
+                    continue;
+                }
+                int column = (int) (x / cellSize);
+                int row = (int) (y / cellSize);
+                if (farFromOthers(x, y, column, row, columns, rows, grid, xs, ys, radius2)) {
+                    if (count == xs.length) {
+                        xs = Arrays.copyOf(xs, 2 * count);
+                        ys = Arrays.copyOf(ys, 2 * count);
+                        active = Arrays.copyOf(active, 2 * count);
+                    }
+                    xs[count] = x;
+                    ys[count] = y;
+                    grid[row * columns + column] = count;
+                    active[numActive++] = count++;
+                    found = true;
+                }
+            }
+            if (!found) {
+                active[i] = active[--numActive];
+            }
+        }
+
+        ArrayList<Point> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(new Point(xs[i], ys[i]));
+        }
+        return points;
+    }
+
+    // a site closer than the radius can only be in the 5 x 5 cells around,
+    // leaving out the corners
+    private static boolean farFromOthers(double x, double y, int column, int row, int columns, int rows,
+            int[] grid, double[] xs, double[] ys, double radius2) {
+        for (int j = Math.max(0, row - 2); j <= Math.min(rows - 1, row + 2); j++) {
+            boolean outerRow = j == row - 2 || j == row + 2;
+            for (int i = Math.max(0, column - 2); i <= Math.min(columns - 1, column + 2); i++) {
+                if (outerRow && (i == column - 2 || i == column + 2)) {
+                    continue;
+                }
+                int other = grid[j * columns + i];
+                if (other >= 0) {
+                    double dx = xs[other] - x, dy = ys[other] - y;
+                    if (dx * dx + dy * dy < radius2) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean wellSpaced() {
+        return true;
+    }
+}
@@ -6,12 +6,10 @@ import com.hoten.delaunay.geom.Rectangle;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Stack;
 
 public final class Site implements ICoord {
 
     final private static double EPSILON = .005;
-    private static Stack<Site> _pool = new Stack<>();
     public Color color;
     public double weight;
     // the edges that define this Site's Voronoi region:
@@ -28,46 +26,19 @@ public final class Site implements ICoord {
     }
 
     public static Site create(Point p, int index, double weight, Color color) {
-        if (_pool.size() > 0) {
-            return _pool.pop().init(p, index, weight, color);
-        } else {
-            return new Site(p, index, weight, color);
-        }
-    }
-
-    public static void sortSites(ArrayList<Site> sites) {
-        //sites.sort(Site.compare);
-        Collections.sort(sites, (o1, o2) -> (int) compare(o1, o2));
+        return new Site(p, index, weight, color);
     }
 
     /**
-     * sort sites on y, then x, coord also change each site's _siteIndex to
+     * sort sites on y, then x, coord and renumber each site's _siteIndex to
      * match its new position in the list so the _siteIndex can be used to
      * identify the site for nearest-neighbor queries
-     * <p>
-     * haha "also" - means more than one responsibility...
      */
-    private static double compare(Site s1, Site s2) {
-        int returnValue = Voronoi.compareByYThenX(s1, s2);
-
-        // swap _siteIndex values if necessary to match new ordering:
-        int tempIndex;
-        if (returnValue == -1) {
-            if (s1._siteIndex > s2._siteIndex) {
-                tempIndex = s1._siteIndex;
-                s1._siteIndex = s2._siteIndex;
-                s2._siteIndex = tempIndex;
-            }
-        } else if (returnValue == 1) {
-            if (s2._siteIndex > s1._siteIndex) {
-                tempIndex = s2._siteIndex;
-                s2._siteIndex = s1._siteIndex;
-                s1._siteIndex = tempIndex;
-            }
-
+    public static void sortSites(ArrayList<Site> sites) {
+        Collections.sort(sites, Voronoi::compareByYThenX);
+        for (int i = 0; i < sites.size(); i++) {
+            sites.get(i)._siteIndex = i;
         }
-
-        return returnValue;
     }
 
     private static boolean closeEnough(Point p0, Point p1) {
@@ -89,6 +60,10 @@ public final class Site implements ICoord {
         return this;
     }
 
+    public int get_siteIndex() {
+        return _siteIndex;
+    }
+
     @Override
     public String toString() {
         return "Site " + _siteIndex + ": " + get_coord();
@@ -102,7 +77,6 @@ public final class Site implements ICoord {
     public void dispose() {
         _coord = null;
         clear();
-        _pool.push(this);
     }
 
     private void clear() {
@@ -158,8 +132,10 @@ public final class Site implements ICoord {
         if (_edges == null || _edges.isEmpty()) {
             return new ArrayList<>();
         }
-        if (_edgeOrientations == null) {
-            reorderEdges();
+        if (_region == null) {
+            if (_edgeOrientations == null) {
+                reorderEdges();
+            }
             _region = clipToBounds(clippingBounds);
             if ((new Polygon(_region)).winding() == Winding.CLOCKWISE) {
                 Collections.reverse(_region);
@@ -321,38 +297,3 @@ public final class Site implements ICoord {
         return Point.distance(p.get_coord(), this._coord);
     }
 }
-
-final class BoundsCheck {
-
-    final public static int TOP = 1;
-    final public static int BOTTOM = 2;
-    final public static int LEFT = 4;
-    final public static int RIGHT = 8;
-
-    public BoundsCheck() {
-        throw new Error("BoundsCheck constructor unused");
-    }
-
-    /**
-     * @param point
-     * @param bounds
-     * @return an int with the appropriate bits set if the Point lies on the
-     * corresponding bounds lines
-     */
-    public static int check(Point point, Rectangle bounds) {
-        int value = 0;
-        if (point.x == bounds.left) {
-            value |= LEFT;
-        }
-        if (point.x == bounds.right) {
-            value |= RIGHT;
-        }
-        if (point.y == bounds.top) {
-            value |= TOP;
-        }
-        if (point.y == bounds.bottom) {
-            value |= BOTTOM;
-        }
-        return value;
-    }
-}
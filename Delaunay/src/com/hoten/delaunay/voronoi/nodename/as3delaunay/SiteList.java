@@ -37,6 +37,10 @@ public final class SiteList implements IDisposable {
         return _sites.size();
     }
 
+    Site get(int index) {
+        return _sites.get(index);
+    }
+
     public Site next() {
         if (!_sorted) {
             throw new Error("SiteList::next():  sites have not been sorted");
@@ -0,0 +1,614 @@
+package com.hoten.delaunay.voronoi.nodename.as3delaunay;
+
+import com.hoten.delaunay.geom.Point;
+import com.hoten.delaunay.geom.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the diagram of a single {@link Voronoi} sweep from independent
+ * sweeps over vertical strips of the sites, run in parallel on the fork-join
+ * pool.
+ * <p>
+ * Every strip owns the sites in its core and sweeps the sites within a
+ * margin around it. A Vertex of the strip's sweep belongs to the full
+ * diagram when its Delaunay circle holds none of the sites left out of the
+ * sweep, and the region of a core site is final once that holds for all of
+ * its Vertices; a strip where it does not is swept again with twice the
+ * margin. The regions and the edges around them are then taken from the
+ * strip that owns the site. The sites are numbered like in {@link Voronoi#siteCoords()},
+ * edges and vertices come out in a different order than from
+ * {@link Voronoi#flatDiagram()} but describe the same diagram.
+ */
+public final class TiledVoronoi {
+
+    // strips smaller than this cost more in margins than they gain; larger
+    // ones sweep faster when split further, even on a single core
+    final private static int MIN_STRIP_SITES = 5000;
+    final private static int STRIP_SITES = 50000;
+    // first margin around a strip's core, and width of the bands along the
+    // top and the bottom that every strip sweeps, in average distances
+    // between sites
+    final private static double MARGIN = 4;
+    // cells of the grid used to look for sites in Delaunay circles, in sites
+    final private static double SITES_PER_CELL = 2;
+    // sites closer to a circle than this share of its radius count as on it
+    final private static double ON_CIRCLE = 1e-12;
+
+    private final Rectangle _plotBounds;
+    private final int _numSites;
+    // sites in the order of the single sweep: on y, then on x
+    private double[] _x, _y;
+    // site indices sorted on x, and their x
+    private int[] _byX;
+    private double[] _sortedX;
+    // numStrips + 1 boundaries of the strip cores on x
+    private double[] _stripX;
+    private double _spacing;
+    // sites every strip sweeps, wherever they are
+    private int[] _sharedSites;
+    private boolean[] _shared;
+    private long[] _hullEdges;
+
+    // sites bucketed on a uniform grid over their bounding box
+    private double _gridX, _gridY, _cellSize;
+    private int _columns, _rows;
+    private int[] _cellOffsets, _cellSites;
+
+    private int _sweeps;
+    private FlatDiagram _diagram;
+
+    public TiledVoronoi(ArrayList<Point> points, Rectangle plotBounds) {
+        this(points, plotBounds, Math.max(1, Math.min(points.size() / MIN_STRIP_SITES,
+                Math.max(points.size() / STRIP_SITES, 4 * ForkJoinPool.getCommonPoolParallelism()))));
+    }
+
+    public TiledVoronoi(ArrayList<Point> points, Rectangle plotBounds, int numStrips) {
+        _plotBounds = plotBounds;
+        _numSites = points.size();
+        if (numStrips < 2 || _numSites < 3 * numStrips) {
+            _sweeps = 1;
+            _diagram = new Voronoi(points, null, plotBounds).flatDiagram();
+            return;
+        }
+        sortSites(points);
+        buildGrid();
+        findSharedSites();
+
+        _stripX = new double[numStrips + 1];
+        _stripX[0] = Double.NEGATIVE_INFINITY;
+        _stripX[numStrips] = Double.POSITIVE_INFINITY;
+        for (int k = 1; k < numStrips; k++) {
+            _stripX[k] = _sortedX[(int) ((long) k * _numSites / numStrips)];
+        }
+
+        Strip[] strips = new Strip[numStrips];
+        IntStream.range(0, numStrips).parallel().forEach(k -> strips[k] = sweepStrip(k));
+        for (Strip strip : strips) {
+            _sweeps += strip.sweeps;
+        }
+        _diagram = stitch(strips);
+    }
+
+    public FlatDiagram flatDiagram() {
+        return _diagram;
+    }
+
+    /**
+     * @return the number of strip sweeps, more than the number of strips when
+     * some margins were too narrow
+     */
+    public int get_sweeps() {
+        return _sweeps;
+    }
+
+    private void sortSites(ArrayList<Point> points) {
+        Integer[] order = new Integer[_numSites];
+        for (int i = 0; i < _numSites; i++) {
+            order[i] = i;
+        }
+        // stable like Site.sortSites, so equal sites keep their order
+        Arrays.sort(order, (a, b) -> {
+            Point p = points.get(a), q = points.get(b);
+            return p.y != q.y ? Double.compare(p.y, q.y) : Double.compare(p.x, q.x);
+        });
+        _x = new double[_numSites];
+        _y = new double[_numSites];
+        for (int i = 0; i < _numSites; i++) {
+            Point p = points.get(order[i]);
+            _x[i] = p.x;
+            _y[i] = p.y;
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(_x[a], _x[b]));
+        _byX = new int[_numSites];
+        _sortedX = new double[_numSites];
+        for (int i = 0; i < _numSites; i++) {
+            _byX[i] = order[i];
+            _sortedX[i] = _x[order[i]];
+        }
+    }
+
+    private void buildGrid() {
+        double minY = _y[0], maxY = _y[_numSites - 1];
+        double minX = _sortedX[0], maxX = _sortedX[_numSites - 1];
+        double width = maxX - minX, height = maxY - minY;
+        _spacing = Math.sqrt(width * height / _numSites);
+        // no more than about 2.5 cells per site, even for very thin layouts
+        _cellSize = Math.max(Math.sqrt(SITES_PER_CELL) * _spacing, Math.max(width, height) / _numSites);
+        if (_cellSize == 0) {
+            _cellSize = 1;
+        }
+        _gridX = minX;
+        _gridY = minY;
+        _columns = (int) (width / _cellSize) + 1;
+        _rows = (int) (height / _cellSize) + 1;
+
+        int[] cells = new int[_numSites];
+        _cellOffsets = new int[_columns * _rows + 1];
+        for (int i = 0; i < _numSites; i++) {
+            cells[i] = row(_y[i]) * _columns + column(_x[i]);
+            _cellOffsets[cells[i] + 1]++;
+        }
+        for (int c = 0; c < _columns * _rows; c++) {
+            _cellOffsets[c + 1] += _cellOffsets[c];
+        }
+        int[] fill = Arrays.copyOf(_cellOffsets, _columns * _rows);
+        _cellSites = new int[_numSites];
+        for (int i = 0; i < _numSites; i++) {
+            _cellSites[fill[cells[i]]++] = i;
+        }
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(_columns - 1, (int) ((x - _gridX) / _cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(_rows - 1, (int) ((y - _gridY) / _cellSize)));
+    }
+
+    // the Delaunay edges on the convex hull are the ones whose Voronoi edge
+    // runs off to infinity; collinear sites on the hull each get their own.
+    // Every strip sweeps the hull sites and the bands along the top and the
+    // bottom too: the triangles under long hull edges fan out across many
+    // strips, and this keeps them from coming out wrong in all of them
+    private void findSharedSites() {
+        int[] hull = new int[2 * _numSites];
+        int count = 0;
+        for (int i = 0; i < _numSites; i++) {
+            while (count >= 2 && cross(hull[count - 2], hull[count - 1], i) < 0) {
+                count--;
+            }
+            hull[count++] = i;
+        }
+        for (int i = _numSites - 2, lower = count + 1; i >= 0; i--) {
+            while (count >= lower && cross(hull[count - 2], hull[count - 1], i) < 0) {
+                count--;
+            }
+            hull[count++] = i;
+        }
+        _hullEdges = new long[count - 1];
+        for (int i = 0; i < count - 1; i++) {
+            _hullEdges[i] = pairKey(hull[i], hull[i + 1]);
+        }
+        Arrays.sort(_hullEdges);
+        double band = MARGIN * _spacing;
+        _shared = new boolean[_numSites];
+        for (int i = 0; i < _numSites && _y[i] < _y[0] + band; i++) {
+            _shared[i] = true;
+        }
+        for (int i = _numSites - 1; i >= 0 && _y[i] > _y[_numSites - 1] - band; i--) {
+            _shared[i] = true;
+        }
+        for (int i = 0; i < count - 1; i++) {
+            _shared[hull[i]] = true;
+        }
+        _sharedSites = IntStream.range(0, _numSites).filter(i -> _shared[i]).toArray();
+    }
+
+    private double cross(int a, int b, int c) {
+        return (_x[b] - _x[a]) * (_y[c] - _y[a]) - (_y[b] - _y[a]) * (_x[c] - _x[a]);
+    }
+
+    private long pairKey(int a, int b) {
+        return (long) Math.min(a, b) * _numSites + Math.max(a, b);
+    }
+
+    private boolean onHull(int a, int b) {
+        return Arrays.binarySearch(_hullEdges, pairKey(a, b)) >= 0;
+    }
+
+    /**
+     * @return whether no site that a strip over [left, right] leaves out lies
+     * strictly inside the circle
+     */
+    private boolean emptyOutside(double cx, double cy, double r2, double left, double right) {
+        double r = Math.sqrt(r2);
+        if (cx - r >= left && cx + r <= right) {
+            return true;
+        }
+        double inside = r2 * (1 - ON_CIRCLE);
+        int firstRow = row(cy - r), lastRow = row(cy + r);
+        for (int j = firstRow; j <= lastRow; j++) {
+            double y0 = _gridY + j * _cellSize, y1 = y0 + _cellSize;
+            double dy = cy < y0 ? y0 - cy : cy > y1 ? cy - y1 : 0;
+            if (dy > r) {
+                continue;
+            }
+            double w = Math.sqrt(r2 - dy * dy);
+            if (cx - w < left && !emptyCells(j, cx - w, Math.min(cx + w, left), cx, cy, inside, left, right)) {
+                return false;
+            }
+            if (cx + w > right && !emptyCells(j, Math.max(cx - w, right), cx + w, cx, cy, inside, left, right)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean emptyCells(int row, double x0, double x1, double cx, double cy, double inside, double left, double right) {
+        for (int c = row * _columns + column(x0), last = row * _columns + column(x1); c <= last; c++) {
+            for (int k = _cellOffsets[c]; k < _cellOffsets[c + 1]; k++) {
+                int site = _cellSites[k];
+                if (_x[site] >= left && _x[site] <= right || _shared[site]) {
+                    continue;
+                }
+                double dx = _x[site] - cx, dy = _y[site] - cy;
+                if (dx * dx + dy * dy < inside) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private Strip sweepStrip(int k) {
+        double margin = Math.max(MARGIN * _spacing, _cellSize);
+        for (int sweeps = 1; ; sweeps++) {
+            Strip strip = new Strip(_stripX[k], _stripX[k + 1], margin);
+            if (strip.sweep()) {
+                strip.sweeps = sweeps;
+                return strip;
+            }
+            margin *= 2;
+        }
+    }
+
+    private FlatDiagram stitch(Strip[] strips) {
+        int numEdges = 0;
+        for (Strip strip : strips) {
+            numEdges += strip.edgeSites.size() / 2;
+        }
+        int[] edgeSite0 = new int[numEdges], edgeSite1 = new int[numEdges];
+        int[] edgeVertex0 = new int[numEdges], edgeVertex1 = new int[numEdges];
+        VertexList vertices = new VertexList(2 * numEdges);
+        HashMap<EndKey, Integer> ids = new HashMap<>(2 * numEdges);
+        int e = 0;
+        for (Strip strip : strips) {
+            for (int i = 0; i < strip.edgeSites.size() / 2; i++, e++) {
+                edgeSite0[e] = strip.edgeSites.get(2 * i);
+                edgeSite1[e] = strip.edgeSites.get(2 * i + 1);
+                EndKey end0 = strip.edgeEnds.get(2 * i), end1 = strip.edgeEnds.get(2 * i + 1);
+                edgeVertex0[e] = end0 != null ? vertices.id(end0, ids) : -1;
+                edgeVertex1[e] = end1 != null ? vertices.id(end1, ids) : -1;
+            }
+        }
+        int numEdgeVertices = vertices.count;
+
+        // every site's region comes from the strip whose core holds it
+        int[] siteStrip = new int[_numSites], siteSlot = new int[_numSites];
+        for (int k = 0; k < strips.length; k++) {
+            for (int s = 0; s < strips[k].coreSites.size(); s++) {
+                siteStrip[strips[k].coreSites.get(s)] = k;
+                siteSlot[strips[k].coreSites.get(s)] = s;
+            }
+        }
+        int[] regionOffsets = new int[_numSites + 1];
+        for (int i = 0; i < _numSites; i++) {
+            Strip strip = strips[siteStrip[i]];
+            int s = siteSlot[i];
+            regionOffsets[i + 1] = regionOffsets[i] + strip.regionOffsets.get(s + 1) - strip.regionOffsets.get(s);
+        }
+        int[] regionVertices = new int[regionOffsets[_numSites]];
+        int[] boundsCornerIds = {-1, -1, -1, -1};
+        for (int i = 0, r = 0; i < _numSites; i++) {
+            Strip strip = strips[siteStrip[i]];
+            for (int j = strip.regionOffsets.get(siteSlot[i]); j < strip.regionOffsets.get(siteSlot[i] + 1); j++) {
+                EndKey end = strip.regionEnds.get(j);
+                Integer id = ids.get(end);
+                if (id == null) {
+                    int corner = FlatDiagram.boundsCorner(new Point(end.x, end.y), _plotBounds);
+                    if (corner < 0) {
+                        id = vertices.add(end.x, end.y);
+                    } else {
+                        if (boundsCornerIds[corner] < 0) {
+                            boundsCornerIds[corner] = vertices.add(end.x, end.y);
+                        }
+                        id = boundsCornerIds[corner];
+                    }
+                }
+                regionVertices[r++] = id;
+            }
+        }
+
+        return new FlatDiagram(_x, _y, Arrays.copyOf(vertices.x, vertices.count), Arrays.copyOf(vertices.y, vertices.count),
+                numEdgeVertices, edgeVertex0, edgeVertex1, edgeSite0, edgeSite1, regionOffsets, regionVertices);
+    }
+
+    /**
+     * One end of a clipped edge or one corner of a region, named so that the
+     * same point gets the same key in every strip: a Vertex by the sites of
+     * its Delaunay triangle, an end cut off at the bounds by its edge and
+     * coordinates.
+     */
+    private static final class EndKey {
+
+        final private static int CUT = -1;
+        final private static int CORNER = -2;
+
+        final int a, b, c;
+        final double x, y;
+
+        EndKey(int a, int b, int c, double x, double y) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof EndKey)) {
+                return false;
+            }
+            EndKey k = (EndKey) o;
+            return a == k.a && b == k.b && c == k.c && (a >= 0 || (x == k.x && y == k.y));
+        }
+
+        @Override
+        public int hashCode() {
+            int h = (a * 31 + b) * 31 + c;
+            return a >= 0 ? h : h * 31 + Double.hashCode(x) * 17 + Double.hashCode(y);
+        }
+    }
+
+    private static final class VertexList {
+
+        double[] x, y;
+        int count;
+
+        VertexList(int capacity) {
+            x = new double[Math.max(4, capacity)];
+            y = new double[x.length];
+        }
+
+        int id(EndKey end, HashMap<EndKey, Integer> ids) {
+            Integer id = ids.get(end);
+            if (id == null) {
+                id = add(end.x, end.y);
+                ids.put(end, id);
+            }
+            return id;
+        }
+
+        int add(double vx, double vy) {
+            if (count == x.length) {
+                x = Arrays.copyOf(x, 2 * count);
+                y = Arrays.copyOf(y, 2 * count);
+            }
+            x[count] = vx;
+            y[count] = vy;
+            return count++;
+        }
+    }
+
+    /**
+     * Growable int array; the strips collect a few million entries.
+     */
+    private static final class IntList {
+
+        private int[] _values = new int[64];
+        private int _size;
+
+        void add(int value) {
+            if (_size == _values.length) {
+                _values = Arrays.copyOf(_values, 2 * _size);
+            }
+            _values[_size++] = value;
+        }
+
+        int get(int i) {
+            return _values[i];
+        }
+
+        int size() {
+            return _size;
+        }
+    }
+
+    /**
+     * The sweep of one strip and what it contributes to the diagram: the
+     * regions of the sites in its core and the edges whose lower site is
+     * one of them.
+     */
+    private final class Strip {
+
+        final private double _coreLeft, _coreRight;
+        final private double _left, _right;
+        private int[] _global;
+        private double[] _vertexX, _vertexY;
+        private int[] _triangles;
+        private byte[] _certified;
+        private EndKey[] _vertexKeys;
+
+        int sweeps;
+        IntList edgeSites, coreSites, regionOffsets;
+        ArrayList<EndKey> edgeEnds, regionEnds;
+
+        Strip(double coreLeft, double coreRight, double margin) {
+            _coreLeft = coreLeft;
+            _coreRight = coreRight;
+            _left = coreLeft - margin;
+            _right = coreRight + margin;
+        }
+
+        /**
+         * @return false if the margin was too narrow to tell the strip's part
+         * of the diagram
+         */
+        boolean sweep() {
+            int from = lowerBound(_left);
+            int to = _right == Double.POSITIVE_INFINITY ? _numSites : upperBound(_right);
+            int[] shared = Arrays.stream(_sharedSites).filter(g -> _x[g] < _left || _x[g] > _right).toArray();
+            _global = Arrays.copyOf(Arrays.copyOfRange(_byX, from, to), to - from + shared.length);
+            System.arraycopy(shared, 0, _global, to - from, shared.length);
+            Arrays.sort(_global);
+            ArrayList<Point> points = new ArrayList<>(_global.length);
+            for (int g : _global) {
+                points.add(new Point(_x[g], _y[g]));
+            }
+            // with the sites handed over in sweep order, local site i is _global[i]
+            Voronoi voronoi = new Voronoi(points, null, _plotBounds);
+            try {
+                return collect(voronoi);
+            } finally {
+                voronoi.dispose();
+            }
+        }
+
+        private int lowerBound(double x) {
+            int lo = 0, hi = _numSites;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (_sortedX[mid] < x) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private int upperBound(double x) {
+            int lo = 0, hi = _numSites;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (_sortedX[mid] <= x) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private boolean inCore(double x) {
+            return x >= _coreLeft && x < _coreRight;
+        }
+
+        private boolean collect(Voronoi voronoi) {
+            ArrayList<Edge> edges = voronoi.edges();
+            _triangles = voronoi.triangleSites();
+            int nvertices = _triangles.length / 3;
+            _vertexX = new double[nvertices];
+            _vertexY = new double[nvertices];
+            _certified = new byte[nvertices];
+            _vertexKeys = new EndKey[nvertices];
+            for (Edge edge : edges) {
+                for (LR leftRight : new LR[]{LR.LEFT, LR.RIGHT}) {
+                    Vertex vertex = edge.vertex(leftRight);
+                    if (vertex != null) {
+                        _vertexX[vertex.get_vertexIndex()] = vertex.get_x();
+                        _vertexY[vertex.get_vertexIndex()] = vertex.get_y();
+                    }
+                }
+            }
+            edgeSites = new IntList();
+            edgeEnds = new ArrayList<>();
+            IdentityHashMap<Point, EndKey> ends = new IdentityHashMap<>();
+            for (Edge edge : edges) {
+                Vertex left = edge.get_leftVertex(), right = edge.get_rightVertex();
+                int site0 = _global[edge.get_leftSite().get_siteIndex()];
+                int site1 = _global[edge.get_rightSite().get_siteIndex()];
+                if (!inCore(_x[site0]) && !inCore(_x[site1])) {
+                    continue;
+                }
+                if (!valid(left, site0, site1) || !valid(right, site0, site1)) {
+                    return false;
+                }
+                EndKey end0 = null, end1 = null;
+                if (edge.get_visible()) {
+                    end0 = endKey(edge, LR.LEFT, site0, site1, ends);
+                    end1 = endKey(edge, LR.RIGHT, site0, site1, ends);
+                }
+                if (inCore(_x[Math.min(site0, site1)])) {
+                    edgeSites.add(site0);
+                    edgeSites.add(site1);
+                    edgeEnds.add(end0);
+                    edgeEnds.add(end1);
+                }
+            }
+
+            coreSites = new IntList();
+            regionOffsets = new IntList();
+            regionEnds = new ArrayList<>();
+            regionOffsets.add(0);
+            for (int i = 0; i < _global.length; i++) {
+                if (!inCore(_x[_global[i]])) {
+                    continue;
+                }
+                coreSites.add(_global[i]);
+                for (Point p : voronoi.regionOf(i)) {
+                    EndKey end = ends.get(p);
+                    regionEnds.add(end != null ? end : new EndKey(EndKey.CORNER, -1, -1, p.x, p.y));
+                }
+                regionOffsets.add(regionEnds.size());
+            }
+            return true;
+        }
+
+        // a missing Vertex is only right where the edge runs off the hull; a
+        // sweep over all the sites is right by definition
+        private boolean valid(Vertex vertex, int site0, int site1) {
+            if (_left <= _sortedX[0] && _right >= _sortedX[_numSites - 1]) {
+                return true;
+            }
+            return vertex != null ? certified(vertex.get_vertexIndex()) : onHull(site0, site1);
+        }
+
+        private boolean certified(int t) {
+            if (_certified[t] == 0) {
+                int a = _global[_triangles[3 * t]];
+                double dx = _x[a] - _vertexX[t], dy = _y[a] - _vertexY[t];
+                boolean empty = emptyOutside(_vertexX[t], _vertexY[t], dx * dx + dy * dy, _left, _right);
+                _certified[t] = (byte) (empty ? 1 : 2);
+            }
+            return _certified[t] == 1;
+        }
+
+        private EndKey endKey(Edge edge, LR leftRight, int site0, int site1, IdentityHashMap<Point, EndKey> ends) {
+            Vertex vertex = edge.clippedVertex(leftRight);
+            Point end = edge.get_clippedEnds().get(leftRight);
+            EndKey key = vertex != null ? vertexKey(vertex.get_vertexIndex())
+                    : new EndKey(EndKey.CUT, Math.min(site0, site1), Math.max(site0, site1), end.x, end.y);
+            ends.put(end, key);
+            return key;
+        }
+
+        private EndKey vertexKey(int t) {
+            if (_vertexKeys[t] == null) {
+                int[] sites = {_global[_triangles[3 * t]], _global[_triangles[3 * t + 1]], _global[_triangles[3 * t + 2]]};
+                Arrays.sort(sites);
+                _vertexKeys[t] = new EndKey(sites[0], sites[1], sites[2], _vertexX[t], _vertexY[t]);
+            }
+            return _vertexKeys[t];
+        }
+    }
+}
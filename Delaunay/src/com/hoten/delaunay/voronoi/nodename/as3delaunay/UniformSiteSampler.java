@@ -0,0 +1,27 @@
+package com.hoten.delaunay.voronoi.nodename.as3delaunay;
+
+import com.hoten.delaunay.geom.Point;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Independent, uniformly random sites. They clump and leave gaps, which is
+ * what the Lloyd relaxation evens out.
+ */
+public final class UniformSiteSampler implements ISiteSampler {
+
+    @Override
+    public ArrayList<Point> sample(int numSites, double width, double height, Random r) {
+        ArrayList<Point> points = new ArrayList<>(numSites);
+        for (int i = 0; i < numSites; i++) {
+            points.add(new Point(r.nextDouble() * width, r.nextDouble() * height));
+        }
+        return points;
+    }
+
+    @Override
+    public boolean wellSpaced() {
+        return false;
+    }
+}
@@ -2,13 +2,9 @@ package com.hoten.delaunay.voronoi.nodename.as3delaunay;
 
 import com.hoten.delaunay.geom.Point;
 
-import java.util.Stack;
-
 final public class Vertex extends Object implements ICoord {
 
     final public static Vertex VERTEX_AT_INFINITY = new Vertex(Double.NaN, Double.NaN);
-    final private static Stack<Vertex> _pool = new Stack<>();
-    private static int _nvertices = 0;
     private Point _coord;
     private int _vertexIndex;
 
@@ -21,12 +17,7 @@ final public class Vertex extends Object implements ICoord {
         if (Double.isNaN(x) || Double.isNaN(y)) {
             return VERTEX_AT_INFINITY;
         }
-        if (_pool.size() > 0) {
-
-            return _pool.pop().init(x, y);
-        } else {
-            return new Vertex(x, y);
-        }
+        return new Vertex(x, y);
     }
 
     /**
@@ -92,11 +83,16 @@ final public class Vertex extends Object implements ICoord {
 
     public void dispose() {
         _coord = null;
-        _pool.push(this);
     }
 
-    public void setIndex() {
-        _vertexIndex = _nvertices++;
+    /**
+     * Vertex indices are handed out by the owning Voronoi, so that every
+     * diagram numbers its vertices independently of any other diagram.
+     *
+     * @param index
+     */
+    public void setIndex(int index) {
+        _vertexIndex = index;
     }
 
     @Override
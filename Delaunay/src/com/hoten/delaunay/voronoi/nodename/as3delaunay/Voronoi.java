@@ -33,21 +33,51 @@ import com.hoten.delaunay.geom.Rectangle;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Random;
 
+/**
+ * A Voronoi owns every Site, Edge, Halfedge and Vertex created by its sweep,
+ * so separate instances can be built concurrently on different threads.
+ */
 public final class Voronoi {
 
     private SiteList _sites;
+    // only built for the Point based queries; prefer the site index ones
     private HashMap<Point, Site> _sitesIndexedByLocation;
     private ArrayList<Triangle> _triangles;
     private ArrayList<Edge> _edges;
     // TODO generalize this so it doesn't have to be a rectangle;
     // then we can make the fractal voronois-within-voronois
     private Rectangle _plotBounds;
+    // number of Vertices that became part of the diagram during the sweep
+    private int _nvertices;
+    // the three sites of the Delaunay triangle around each Vertex, by vertex index
+    private int[] _triangleSites;
+    private QueueType _queueType = QueueType.BUCKETS;
+    // site weights for diagrams built from given points, which come without
+    // a generator of their own; fixed so that equal input gives equal output
+    final private static long WEIGHT_SEED = 0x5EED;
+
+    /**
+     * Event queue used by the sweep. BUCKETS is the original hashed queue,
+     * BINARY_HEAP guarantees O(log n) per operation even when the sites are
+     * unevenly distributed.
+     */
+    public enum QueueType {
+        BUCKETS,
+        BINARY_HEAP
+    }
 
     public Voronoi(ArrayList<Point> points, ArrayList<Color> colors, Rectangle plotBounds) {
-        init(points, colors, plotBounds);
+        init(points, colors, plotBounds, new Random(WEIGHT_SEED));
+        fortunesAlgorithm();
+    }
+
+    public Voronoi(ArrayList<Point> points, ArrayList<Color> colors, Rectangle plotBounds, QueueType queueType) {
+        _queueType = queueType;
+        init(points, colors, plotBounds, new Random(WEIGHT_SEED));
         fortunesAlgorithm();
     }
 
@@ -58,16 +88,19 @@ public final class Voronoi {
             maxHeight = Math.max(maxHeight, p.y);
         }
         System.out.println(maxWidth + "," + maxHeight);
-        init(points, colors, new Rectangle(0, 0, maxWidth, maxHeight));
+        init(points, colors, new Rectangle(0, 0, maxWidth, maxHeight), new Random(WEIGHT_SEED));
         fortunesAlgorithm();
     }
 
     public Voronoi(int numSites, double maxWidth, double maxHeight, Random r, ArrayList<Color> colors) {
-        ArrayList<Point> points = new ArrayList<>();
-        for (int i = 0; i < numSites; i++) {
-            points.add(new Point(r.nextDouble() * maxWidth, r.nextDouble() * maxHeight));
-        }
-        init(points, colors, new Rectangle(0, 0, maxWidth, maxHeight));
+        this(new UniformSiteSampler(), numSites, maxWidth, maxHeight, r, colors);
+    }
+
+    /**
+     * @param colors one per site; a sampler may not hit numSites exactly
+     */
+    public Voronoi(ISiteSampler sampler, int numSites, double maxWidth, double maxHeight, Random r, ArrayList<Color> colors) {
+        init(sampler.sample(numSites, maxWidth, maxHeight, r), colors, new Rectangle(0, 0, maxWidth, maxHeight), r);
         fortunesAlgorithm();
     }
 
@@ -131,29 +164,45 @@ public final class Voronoi {
         }
         _plotBounds = null;
         _sitesIndexedByLocation = null;
+        _triangleSites = null;
     }
 
-    private void init(ArrayList<Point> points, ArrayList<Color> colors, Rectangle plotBounds) {
+    private void init(ArrayList<Point> points, ArrayList<Color> colors, Rectangle plotBounds, Random weights) {
         _sites = new SiteList();
-        _sitesIndexedByLocation = new HashMap<>();
-        addSites(points, colors);
+        addSites(points, colors, weights);
         _plotBounds = plotBounds;
         _triangles = new ArrayList<>();
         _edges = new ArrayList<>();
+        _nvertices = 0;
+        _triangleSites = new int[3 * Math.max(1, 2 * _sites.get_length())];
     }
 
-    private void addSites(ArrayList<Point> points, ArrayList<Color> colors) {
+    private void addSites(ArrayList<Point> points, ArrayList<Color> colors, Random weights) {
         int length = points.size();
         for (int i = 0; i < length; ++i) {
-            addSite(points.get(i), colors != null ? colors.get(i) : null, i);
+            addSite(points.get(i), colors != null ? colors.get(i) : null, i, weights);
         }
     }
 
-    private void addSite(Point p, Color color, int index) {
-        double weight = Math.random() * 100;
+    private void addSite(Point p, Color color, int index, Random weights) {
+        double weight = weights.nextDouble() * 100;
         Site site = Site.create(p, index, weight, color);
         _sites.push(site);
-        _sitesIndexedByLocation.put(p, site);
+    }
+
+    private Site siteAt(Point p) {
+        if (_sitesIndexedByLocation == null) {
+            _sitesIndexedByLocation = new HashMap<>(2 * _sites.get_length());
+            for (int i = 0; i < _sites.get_length(); i++) {
+                Site site = _sites.get(i);
+                _sitesIndexedByLocation.put(site.get_coord(), site);
+            }
+        }
+        return _sitesIndexedByLocation.get(p);
+    }
+
+    public int get_siteCount() {
+        return _sites.get_length();
     }
 
     public ArrayList<Edge> edges() {
@@ -161,17 +210,33 @@ public final class Voronoi {
     }
 
     public ArrayList<Point> region(Point p) {
-        Site site = _sitesIndexedByLocation.get(p);
+        Site site = siteAt(p);
         if (site == null) {
             return new ArrayList<>();
         }
         return site.region(_plotBounds);
     }
 
-    // TODO: bug: if you call this before you call region(), something goes wrong :(
+    /**
+     * @param siteIndex position of the site in {@link #siteCoords()}
+     * @return the region of the site, clipped to the plot bounds
+     */
+    public ArrayList<Point> regionOf(int siteIndex) {
+        return _sites.get(siteIndex).region(_plotBounds);
+    }
+
+    /**
+     * @param siteIndex position of the site in {@link #siteCoords()}
+     * @return the edges bounding the site's region; owned by the site, do not
+     * modify
+     */
+    public ArrayList<Edge> edgesOf(int siteIndex) {
+        return _sites.get(siteIndex)._edges;
+    }
+
     public ArrayList<Point> neighborSitesForSite(Point coord) {
         ArrayList<Point> points = new ArrayList<>();
-        Site site = _sitesIndexedByLocation.get(coord);
+        Site site = siteAt(coord);
         if (site == null) {
             return points;
         }
@@ -186,22 +251,14 @@ public final class Voronoi {
         return _sites.circles();
     }
 
-    private ArrayList<Edge> selectEdgesForSitePoint(Point coord, ArrayList<Edge> edgesToTest) {
-        ArrayList<Edge> filtered = new ArrayList<>();
-
-        for (Edge e : edgesToTest) {
-            if (((e.get_leftSite() != null && e.get_leftSite().get_coord() == coord)
-                    || (e.get_rightSite() != null && e.get_rightSite().get_coord() == coord))) {
-                filtered.add(e);
-            }
+    // every Edge is registered with both of its sites during the sweep, so
+    // there is no need to scan all edges
+    private ArrayList<Edge> selectEdgesForSitePoint(Point coord) {
+        Site site = siteAt(coord);
+        if (site == null) {
+            return new ArrayList<>();
         }
-        return filtered;
-
-        /*function myTest(edge:Edge, index:int, vector:Vector.<Edge>):Boolean
-         {
-         return ((edge.leftSite && edge.leftSite.coord == coord)
-         ||  (edge.rightSite && edge.rightSite.coord == coord));
-         }*/
+        return new ArrayList<>(site._edges);
     }
 
     private ArrayList<LineSegment> visibleLineSegments(ArrayList<Edge> edges) {
@@ -229,11 +286,19 @@ public final class Voronoi {
     }
 
     public ArrayList<LineSegment> voronoiBoundaryForSite(Point coord) {
-        return visibleLineSegments(selectEdgesForSitePoint(coord, _edges));
+        return visibleLineSegments(selectEdgesForSitePoint(coord));
     }
 
     public ArrayList<LineSegment> delaunayLinesForSite(Point coord) {
-        return delaunayLinesForEdges(selectEdgesForSitePoint(coord, _edges));
+        return delaunayLinesForEdges(selectEdgesForSitePoint(coord));
+    }
+
+    public ArrayList<LineSegment> voronoiBoundaryForSite(int siteIndex) {
+        return visibleLineSegments(edgesOf(siteIndex));
+    }
+
+    public ArrayList<LineSegment> delaunayLinesForSite(int siteIndex) {
+        return delaunayLinesForEdges(edgesOf(siteIndex));
     }
 
     public ArrayList<LineSegment> voronoiDiagram() {
@@ -320,6 +385,14 @@ public final class Voronoi {
         return _sites.siteCoords();
     }
 
+    /**
+     * @return the diagram copied into flat primitive arrays
+     * @see FlatDiagram
+     */
+    public FlatDiagram flatDiagram() {
+        return new FlatDiagram(_sites, _edges, _nvertices, _plotBounds);
+    }
+
     private void fortunesAlgorithm() {
         Site newSite, bottomSite, topSite, tempSite;
         Vertex v, vertex;
@@ -331,10 +404,10 @@ public final class Voronoi {
         Rectangle dataBounds = _sites.getSitesBounds();
 
         int sqrt_nsites = (int) Math.sqrt(_sites.get_length() + 4);
-        HalfedgePriorityQueue heap = new HalfedgePriorityQueue(dataBounds.y, dataBounds.height, sqrt_nsites);
+        IHalfedgePriorityQueue heap = _queueType == QueueType.BINARY_HEAP
+                ? new HalfedgeHeap(sqrt_nsites)
+                : new HalfedgePriorityQueue(dataBounds.y, dataBounds.height, sqrt_nsites);
         EdgeList edgeList = new EdgeList(dataBounds.x, dataBounds.width, sqrt_nsites);
-        ArrayList<Halfedge> halfEdges = new ArrayList<>();
-        ArrayList<Vertex> vertices = new ArrayList<>();
 
         Site bottomMostSite = _sites.next();
         newSite = _sites.next();
@@ -359,19 +432,17 @@ public final class Voronoi {
                 //trace("new Site is in region of existing site: " + bottomSite);
 
                 // Step 9:
-                edge = Edge.createBisectingEdge(bottomSite, newSite);
+                edge = Edge.createBisectingEdge(bottomSite, newSite, _edges.size());
                 //trace("new edge: " + edge);
                 _edges.add(edge);
 
                 bisector = Halfedge.create(edge, LR.LEFT);
-                halfEdges.add(bisector);
                 // inserting two Halfedges into edgeList constitutes Step 10:
                 // insert bisector to the right of lbnd:
                 edgeList.insert(lbnd, bisector);
 
                 // first half of Step 11:
                 if ((vertex = Vertex.intersect(lbnd, bisector)) != null) {
-                    vertices.add(vertex);
                     heap.remove(lbnd);
                     lbnd.vertex = vertex;
                     lbnd.ystar = vertex.get_y() + newSite.dist(vertex);
@@ -380,14 +451,12 @@ public final class Voronoi {
 
                 lbnd = bisector;
                 bisector = Halfedge.create(edge, LR.RIGHT);
-                halfEdges.add(bisector);
                 // second Halfedge for Step 10:
                 // insert bisector to the right of lbnd:
                 edgeList.insert(lbnd, bisector);
 
                 // second half of Step 11:
                 if ((vertex = Vertex.intersect(bisector, rbnd)) != null) {
-                    vertices.add(vertex);
                     bisector.vertex = vertex;
                     bisector.ystar = vertex.get_y() + newSite.dist(vertex);
                     heap.insert(bisector);
@@ -403,11 +472,11 @@ public final class Voronoi {
                 bottomSite = leftRegion(lbnd, bottomMostSite);
                 topSite = rightRegion(rbnd, bottomMostSite);
                 // these three sites define a Delaunay triangle
-                // (not actually using these for anything...)
                 //_triangles.push(new Triangle(bottomSite, topSite, rightRegion(lbnd)));
 
                 v = lbnd.vertex;
-                v.setIndex();
+                addTriangle(bottomSite, rightRegion(lbnd, bottomMostSite), topSite);
+                v.setIndex(_nvertices++);
                 lbnd.edge.setVertex(lbnd.leftRight, v);
                 rbnd.edge.setVertex(rbnd.leftRight, v);
                 edgeList.remove(lbnd);
@@ -420,21 +489,18 @@ public final class Voronoi {
                     topSite = tempSite;
                     leftRight = LR.RIGHT;
                 }
-                edge = Edge.createBisectingEdge(bottomSite, topSite);
+                edge = Edge.createBisectingEdge(bottomSite, topSite, _edges.size());
                 _edges.add(edge);
                 bisector = Halfedge.create(edge, leftRight);
-                halfEdges.add(bisector);
                 edgeList.insert(llbnd, bisector);
                 edge.setVertex(LR.other(leftRight), v);
                 if ((vertex = Vertex.intersect(llbnd, bisector)) != null) {
-                    vertices.add(vertex);
                     heap.remove(llbnd);
                     llbnd.vertex = vertex;
                     llbnd.ystar = vertex.get_y() + bottomSite.dist(vertex);
                     heap.insert(llbnd);
                 }
                 if ((vertex = Vertex.intersect(bisector, rrbnd)) != null) {
-                    vertices.add(vertex);
                     bisector.vertex = vertex;
                     bisector.ystar = vertex.get_y() + bottomSite.dist(vertex);
                     heap.insert(bisector);
@@ -448,22 +514,28 @@ public final class Voronoi {
         heap.dispose();
         edgeList.dispose();
 
-        for (Halfedge halfEdge : halfEdges) {
-            halfEdge.reallyDispose();
-        }
-        halfEdges.clear();
-
         // we need the vertices to clip the edges
         for (Edge e : _edges) {
             e.clipVertices(_plotBounds);
         }
-        // but we don't actually ever use them again!
-        for (Vertex v0 : vertices) {
-            v0.dispose();
-        }
-        vertices.clear();
+    }
 
+    private void addTriangle(Site a, Site b, Site c) {
+        int i = 3 * _nvertices;
+        if (i + 3 > _triangleSites.length) {
+            _triangleSites = Arrays.copyOf(_triangleSites, 2 * _triangleSites.length);
+        }
+        _triangleSites[i] = a.get_siteIndex();
+        _triangleSites[i + 1] = b.get_siteIndex();
+        _triangleSites[i + 2] = c.get_siteIndex();
+    }
 
+    /**
+     * @return three site indices per Vertex of the diagram, in the order of
+     * the vertex indices; the sites of a triangle are not consistently wound
+     */
+    int[] triangleSites() {
+        return Arrays.copyOf(_triangleSites, 3 * _nvertices);
     }
 
     Site leftRegion(Halfedge he, Site bottomMostSite) {
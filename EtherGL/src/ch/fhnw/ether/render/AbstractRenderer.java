@@ -38,6 +38,8 @@ import com.jogamp.opengl.GL3;
 import ch.fhnw.ether.render.forward.ShadowVolumes;
 import ch.fhnw.ether.scene.attribute.IAttribute;
 import ch.fhnw.ether.scene.mesh.IMesh.Queue;
+import ch.fhnw.util.math.Mat4;
+import ch.fhnw.util.math.geometry.BoundingBox;
 
 public abstract class AbstractRenderer implements IRenderer {
 	public static final class RenderGlobals {
@@ -59,13 +61,56 @@ public abstract class AbstractRenderer implements IRenderer {
 	}
 
 	protected void renderObjects(GL3 gl, IRenderTargetState state, Queue pass) {
+		// only the queues drawn in world space can be culled
+		boolean cull = pass != Queue.DEVICE_SPACE_OVERLAY && pass != Queue.SCREEN_SPACE_OVERLAY;
+		Mat4 viewProj = cull ? state.getViewCameraState().getViewProjMatrix() : null;
 		for (Renderable renderable : state.getRenderables()) {
-			if (renderable.getQueue() == pass) {
+			if (renderable.getQueue() == pass && (!cull || isInFrustum(renderable.getBounds(), viewProj))) {
 				renderable.render(gl);
 			}
 		}
 	}
 
+	/**
+	 * Tests the box's corners against the planes of the view frustum in clip
+	 * space. Conservative: a box near a corner of the frustum may pass
+	 * although it lies outside.
+	 * 
+	 * @return false if all corners lie outside the same plane; true otherwise,
+	 *         or if the bounds are null or empty
+	 */
+	public static boolean isInFrustum(BoundingBox b, Mat4 viewProj) {
+		if (b == null || !b.isValid())
+			return true;
+		int outside = 0x3f;
+		for (int i = 0; i < 8; ++i) {
+			float x = (i & 1) == 0 ? b.getMinX() : b.getMaxX();
+			float y = (i & 2) == 0 ? b.getMinY() : b.getMaxY();
+			float z = (i & 4) == 0 ? b.getMinZ() : b.getMaxZ();
+			float cx = viewProj.m00 * x + viewProj.m01 * y + viewProj.m02 * z + viewProj.m03;
+			float cy = viewProj.m10 * x + viewProj.m11 * y + viewProj.m12 * z + viewProj.m13;
+			float cz = viewProj.m20 * x + viewProj.m21 * y + viewProj.m22 * z + viewProj.m23;
+			float cw = viewProj.m30 * x + viewProj.m31 * y + viewProj.m32 * z + viewProj.m33;
+			int corner = 0;
+			if (cx < -cw)
+				corner |= 1;
+			if (cx > cw)
+				corner |= 2;
+			if (cy < -cw)
+				corner |= 4;
+			if (cy > cw)
+				corner |= 8;
+			if (cz < -cw)
+				corner |= 16;
+			if (cz > cw)
+				corner |= 32;
+			outside &= corner;
+			if (outside == 0)
+				return true;
+		}
+		return false;
+	}
+
 	protected void renderShadowVolumes(GL3 gl, IRenderTargetState state, Queue pass) {
 		if (shadowVolumes == null) {
 			shadowVolumes = new ShadowVolumes(globals.attributes);
@@ -38,12 +38,14 @@ import com.jogamp.opengl.GL3;
 import ch.fhnw.ether.render.shader.IShader;
 import ch.fhnw.ether.scene.attribute.IAttribute;
 import ch.fhnw.ether.scene.mesh.IMesh;
+import ch.fhnw.util.math.geometry.BoundingBox;
 
 public final class Renderable {
 	private final IShader shader;
 	private final VertexBuffer buffer;
 	private final IMesh.Queue queue;
 	private final Set<IMesh.Flag> flags;
+	private BoundingBox bounds;
 
 	public Renderable(IMesh mesh, Map<IAttribute, Supplier<?>> globals) {
 		this(null, mesh, globals);
@@ -59,8 +61,13 @@ public final class Renderable {
 	public void update(GL3 gl, Object[] materialData, float[][] geometryData) {
 		if (materialData != null)
 			shader.update(gl, materialData);
-		if (geometryData != null)
+		if (geometryData != null) {
 			buffer.update(gl, geometryData);
+			// the data comes transformed and position first, so these are
+			// the bounds in world space
+			bounds = new BoundingBox();
+			bounds.add(geometryData[0]);
+		}
 	}
 
 	public void render(GL3 gl) {
@@ -73,6 +80,14 @@ public final class Renderable {
 		return queue;
 	}
 
+	/**
+	 * @return the bounds of the geometry last uploaded, or null before the
+	 *         first upload
+	 */
+	public BoundingBox getBounds() {
+		return bounds;
+	}
+
 	public boolean containsFlag(IMesh.Flag flag) {
 		return flags.contains(flag);
 	}
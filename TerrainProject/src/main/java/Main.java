@@ -11,8 +11,13 @@ import java.io.IOException;
 
 public class Main {
 
+    // pass the seed printed for a map to generate it again
     public static void main(String[] args) throws IOException {
-        new Controller();
+        if (args.length > 0) {
+            new Controller(Long.parseLong(args[0]));
+        } else {
+            new Controller();
+        }
     }
 
 }
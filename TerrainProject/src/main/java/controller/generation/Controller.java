@@ -20,14 +20,14 @@ import ch.fhnw.util.color.RGB;
 import ch.fhnw.util.math.Mat4;
 import ch.fhnw.util.math.Vec3;
 import model.GraphManager;
-import model.GraphToMeshConverter;
+import model.LevelOfDetail;
 
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 /**
  * ether-gl stuff
@@ -35,13 +35,19 @@ import java.util.Random;
  * Created by P on 04.12.2015.
  */
 public class Controller {
-    final long seed;
+    // seed of the map on screen; Generate moves on to a new one
+    long seed;
     //final long seed = 177470702879216; //nice value, for debugging :)
 
+    // the meshes on screen, each tile of the map at its own level of detail
     List<IMesh> world = null;
+    LevelOfDetail levels;
+    int[] tileLevels;
     IScene scene;
+    ICamera camera;
 
     int resolution = 5000;
+    VoronoiGraph.River_Type riverType = VoronoiGraph.River_Type.RANDOM_WALKS;
 
     private boolean drawByHandToggle = false;
     IslandDrawTool islandDrawTool;
@@ -51,7 +57,11 @@ public class Controller {
     GraphManager graphManager;
 
     public Controller() {
-        seed = System.nanoTime();
+        this(System.nanoTime());
+    }
+
+    public Controller(long seed) {
+        this.seed = seed;
         init();
     }
 
@@ -70,7 +80,7 @@ public class Controller {
             controller.setScene(scene);
 
             // Create and add camera
-            ICamera camera = new Camera(new Vec3(0, -5, 5), Vec3.ZERO);
+            camera = new Camera(new Vec3(0, -5, 5), Vec3.ZERO);
             scene.add3DObject(camera);
             generateGraph();
             ILight light0 = new DirectionalLight(new Vec3(0, -1f, 0), RGB.GRAY, RGB.WHITE);
@@ -82,10 +92,11 @@ public class Controller {
 
             // Add an exit button
             controller.getUI().addWidget(new Button(0, 0, "Quit", "Quit", KeyEvent.VK_ESCAPE, (button, v) -> System.exit(0)));
-            controller.getUI().addWidget(new Button(0, 1, "Generate", "Generate", KeyEvent.VK_G, (button, v) -> generateGraph()));
+            controller.getUI().addWidget(new Button(0, 1, "Generate", "Generate", KeyEvent.VK_G, (button, v) -> generateGraph(System.nanoTime())));
             controller.getUI().addWidget(new Button(0, 2, "changeResolution", String.valueOf(resolution), KeyEvent.VK_R, (button, v) -> resolutionSteps()));
             controller.getUI().addWidget(new Button(0, 3, "export", "export", KeyEvent.VK_S, (button, v) -> saveObj()));
             controller.getUI().addWidget(new Button(0, 4, "drawByHandToggle", "drawByHandToggle", KeyEvent.VK_D, (button, v) -> drawByHandToggle(!drawByHandToggle)));
+            controller.getUI().addWidget(new Button(0, 5, "riverType", "rivers", KeyEvent.VK_V, (button, v) -> riverTypeSteps()));
 
         });
 
@@ -93,32 +104,77 @@ public class Controller {
             @Override
             public void run(double time, double interval) {
                 islandDrawTool.update((float)interval);
+                updateLevelOfDetail();
             }
         });
     }
 
+    private void generateGraph(long seed) {
+        this.seed = seed;
+        generateGraph();
+    }
+
     private void generateGraph() {
         if (world != null && drawByHandToggle == false) {
             scene.remove3DObjects(world);
         }
 
-        Random rngesus = new Random();
-
         if(drawByHandToggle){
-            graphManager = new GraphManager(rngesus, seed, resolution, VoronoiGraph.Generation_Type.DRAWNCIRCLES, islandDrawTool.getCircles());
+            graphManager = new GraphManager(seed, resolution, VoronoiGraph.Generation_Type.DRAWNCIRCLES, islandDrawTool.getCircles(), riverType);
         }else{
-            graphManager = new GraphManager(rngesus, seed, resolution);
+            graphManager = new GraphManager(seed, resolution, VoronoiGraph.Generation_Type.RANDOM, null, riverType);
         }
 
-        long seed = System.nanoTime();
-
-        world = GraphToMeshConverter.createMapAsMesh(graphManager.getGraph(), true, false, false, false, false, false);
+        levels = graphManager.getLevelsOfDetail();
+        tileLevels = new int[levels.getNumTiles()];
+        for (int tile = 0; tile < tileLevels.length; tile++) {
+            tileLevels[tile] = levels.levelFor(distanceToTile(tile));
+        }
+        world = currentWorld();
 
         Mat4 translateToCenter = Mat4.translate(-500, -500, 0);
-        world.forEach(iMesh -> iMesh.setTransform(translateToCenter));
+        for (int i = 0; i < levels.getNumLevels(); i++) {
+            levels.getLevel(i).forEach(iMesh -> iMesh.setTransform(translateToCenter));
+        }
         drawByHandToggle(false);
     }
 
+    // shows each tile at the level of detail that suits the camera's
+    // distance to it, swapping only the tiles whose level changed
+    private void updateLevelOfDetail() {
+        if (levels == null || drawByHandToggle) {
+            return;
+        }
+        boolean changed = false;
+        for (int tile = 0; tile < tileLevels.length; tile++) {
+            int next = levels.levelFor(distanceToTile(tile));
+            if (next != tileLevels[tile]) {
+                scene.remove3DObjects(levels.getTile(tileLevels[tile], tile));
+                tileLevels[tile] = next;
+                scene.add3DObjects(levels.getTile(next, tile));
+                changed = true;
+            }
+        }
+        if (changed) {
+            world = currentWorld();
+        }
+    }
+
+    private List<IMesh> currentWorld() {
+        List<IMesh> meshes = new ArrayList<>();
+        for (int tile = 0; tile < tileLevels.length; tile++) {
+            meshes.addAll(levels.getTile(tileLevels[tile], tile));
+        }
+        return meshes;
+    }
+
+    // from the camera to the nearest point of the tile; the map lies moved
+    // by -500, -500 to center it at the origin
+    private double distanceToTile(int tile) {
+        Vec3 eye = camera.getPosition();
+        return levels.distanceToTile(tile, eye.x + 500, eye.y + 500, eye.z);
+    }
+
     private void resolutionSteps() {
         switch (resolution) {
             case 5000:
@@ -138,10 +194,21 @@ public class Controller {
         System.out.println("set resolution to" + resolution);
     }
 
+    // the next way to lay out the rivers, shown on the map on screen
+    private void riverTypeSteps() {
+        VoronoiGraph.River_Type[] types = VoronoiGraph.River_Type.values();
+        riverType = types[(riverType.ordinal() + 1) % types.length];
+        System.out.println("set rivers to " + riverType);
+        if (!drawByHandToggle) {
+            generateGraph();
+        }
+    }
+
     private boolean saveObj() {
         try {
             ObjWriter out = new ObjWriter(new File("ModelSaves_" + Instant.now().toString().replace("-", "_").replace(":", "_").replace(".", "_")));
-            world.forEach(out::addMesh);
+            // the full detail, whatever is on screen
+            levels.getLevel(0).forEach(out::addMesh);
             out.write();
             return true;
         } catch (FileNotFoundException e) {
@@ -164,8 +231,8 @@ public class Controller {
 //
 //        long seed = System.nanoTime();
 //        Random rngesus = new Random(seed);
-//        graphManager = new GraphManager(rngesus,seed,resolution);
-//        world = GraphToMeshConverter.createMapAsMesh(graphManager.getGraph(), true, false, false, false, false, false);
+//        graphManager = new GraphManager(seed,resolution);
+//        world = graphManager.getMeshes();
 //
 //        scene.add3DObjects(world);
 //        Mat4 translateToCenter = Mat4.translate(-400, 0, -400);
@@ -5,6 +5,7 @@ import ch.fhnw.ether.scene.mesh.material.IMaterial;
 import ch.fhnw.util.color.RGBA;
 import controller.generation.TerrainCircle;
 
+import com.hoten.delaunay.geom.Rectangle;
 import com.hoten.delaunay.voronoi.Center;
 import com.hoten.delaunay.voronoi.VoronoiGraph;
 import com.hoten.delaunay.voronoi.nodename.as3delaunay.Voronoi;
@@ -26,6 +27,18 @@ public class DefaultVoronoiGraph extends VoronoiGraph {
         super(v, numLloydRelaxations, r, generation_type, circles);
     }
 
+    // restored by GraphCache
+    DefaultVoronoiGraph(Rectangle bounds, Random r, long riverSeed, River_Type riverType, Generation_Type generation_type,
+                        List<TerrainCircle> circles) {
+        super(bounds, r, riverSeed, riverType, generation_type, circles);
+    }
+
+    // for GraphCache, which lies outside VoronoiGraph's package
+    @Override
+    protected void restoreStages(double[] distance, double[] spreadMoisture, boolean[] islandWater) {
+        super.restoreStages(distance, spreadMoisture, islandWater);
+    }
+
 
         @Override
     public Color getColor(Enum biome) {
@@ -0,0 +1,334 @@
+package model;
+
+import com.hoten.delaunay.geom.Point;
+import com.hoten.delaunay.geom.Rectangle;
+import com.hoten.delaunay.voronoi.Center;
+import com.hoten.delaunay.voronoi.Corner;
+import com.hoten.delaunay.voronoi.CornerStore;
+import com.hoten.delaunay.voronoi.Edge;
+import com.hoten.delaunay.voronoi.VoronoiGraph;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.ISiteSampler;
+import controller.generation.TerrainCircle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Keeps finished graphs on disk so that a map that was generated before is
+ * loaded instead of generated again. Every file holds one graph, named by a
+ * SHA-256 of the parameters it was generated from, in flat little endian
+ * arrays that are read back through a memory mapping. Once the directory
+ * grows beyond its limit, the files that were used least recently are
+ * deleted.
+ * <p>
+ * A cache that cannot be read or written only costs the time to generate.
+ */
+public class GraphCache {
+
+    final private static int MAGIC = 0x4D415047;
+    // bump whenever the file layout or the generation changes
+    final private static int VERSION = 6;
+    final private static String SUFFIX = ".graph";
+    final private static int OCEAN = 1, WATER = 2, COAST = 4, BORDER = 8;
+    // of the corners only
+    final private static int ISLAND_WATER = 16;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public GraphCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the hex SHA-256 of everything the graph is generated from
+     */
+    public static String key(long seed, int numSites, int numLloydRelaxations, ISiteSampler sampler, Rectangle bounds,
+                             VoronoiGraph.Generation_Type generationType, List<TerrainCircle> circles,
+                             VoronoiGraph.River_Type riverType) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeInt(numSites);
+            out.writeInt(numLloydRelaxations);
+            out.writeUTF(sampler.getClass().getName());
+            out.writeDouble(bounds.x);
+            out.writeDouble(bounds.y);
+            out.writeDouble(bounds.width);
+            out.writeDouble(bounds.height);
+            out.writeUTF(generationType.name());
+            out.writeUTF(riverType.name());
+            if (circles != null) {
+                out.writeInt(circles.size());
+                for (TerrainCircle circle : circles) {
+                    out.writeFloat(circle.m.x);
+                    out.writeFloat(circle.m.y);
+                    out.writeFloat(circle.m.z);
+                    out.writeFloat(circle.r);
+                }
+            }
+            out.flush();
+            StringBuilder key = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray())) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the cached graph, or null if there is none for the key
+     */
+    public DefaultVoronoiGraph load(String key, Random r, VoronoiGraph.Generation_Type generationType, List<TerrainCircle> circles) {
+        Path file = directory.resolve(key + SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            DefaultVoronoiGraph graph = read(buffer, r, generationType, circles);
+            // the modification time doubles as the time of last use
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return graph;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("could not load cached graph " + file + ": " + e);
+            return null;
+        }
+    }
+
+    public void store(String key, VoronoiGraph graph) {
+        try {
+            Files.createDirectories(directory);
+            ByteBuffer buffer = write(graph);
+            // written aside and moved in place, so that a reader never sees half a file
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evict();
+        } catch (IOException e) {
+            System.err.println("could not cache graph " + key + ": " + e);
+        }
+    }
+
+    // deletes the least recently used files until the rest fit into maxBytes
+    private void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        long[] sizes = new long[files.size()];
+        long[] used = new long[files.size()];
+        Integer[] order = new Integer[files.size()];
+        long total = 0;
+        for (int i = 0; i < files.size(); i++) {
+            sizes[i] = Files.size(files.get(i));
+            used[i] = Files.getLastModifiedTime(files.get(i)).toMillis();
+            order[i] = i;
+            total += sizes[i];
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(used[a], used[b]));
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            Files.deleteIfExists(files.get(order[i]));
+            total -= sizes[order[i]];
+        }
+    }
+
+    private static ByteBuffer write(VoronoiGraph graph) {
+        int numCenters = graph.centers.size();
+        int numCorners = graph.corners.size();
+        int numEdges = graph.edges.size();
+        int links = 0;
+        for (Center c : graph.centers) {
+            links += c.neighbors.size() + c.corners.size() + c.borders.size();
+        }
+        for (Corner c : graph.corners) {
+            links += c.touches.size() + c.adjacent.size() + c.protrudes.size();
+        }
+        CornerStore store = graph.getCornerStore();
+        long size = 6 * 4 + 5 * 8
+                + numCenters * (5 * 8 + 4 + 1 + 3 * 4)
+                + numCorners * (6 * 8 + 4 * 4 + 1 + 3 * 4)
+                + numEdges * 5 * 4
+                + 4L * links;
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC).putInt(VERSION);
+        buffer.putDouble(graph.bounds.x).putDouble(graph.bounds.y).putDouble(graph.bounds.width).putDouble(graph.bounds.height);
+        buffer.putLong(graph.getRiverSeed()).putInt(graph.getRiverType().ordinal());
+        buffer.putInt(numCenters).putInt(numCorners).putInt(numEdges);
+
+        for (Center c : graph.centers) {
+            buffer.putDouble(c.loc.x).putDouble(c.loc.y).putDouble(c.elevation).putDouble(c.moisture).putDouble(c.area)
+                    .putInt(c.biome == null ? -1 : c.biome.ordinal())
+                    .put(flags(c.ocean, c.water, c.coast, c.border));
+        }
+        // with what the stages from the distances on read, so that they can run again
+        for (Corner c : graph.corners) {
+            buffer.putDouble(c.loc.x).putDouble(c.loc.y).putDouble(c.elevation).putDouble(c.moisture)
+                    .putDouble(store.distance(c.index)).putDouble(store.spreadMoisture(c.index))
+                    .putInt(c.river).putInt(c.downslope == null ? -1 : c.downslope.index)
+                    .putInt(c.watershed == null ? -1 : c.watershed.index).putInt(c.watershedSize)
+                    .put((byte) (flags(c.ocean, c.water, c.coast, c.border) | (store.isIslandWater(c.index) ? ISLAND_WATER : 0)));
+        }
+        for (Edge e : graph.edges) {
+            buffer.putInt(index(e.d0)).putInt(index(e.d1)).putInt(index(e.v0)).putInt(index(e.v1)).putInt(e.river);
+        }
+
+        // adjacency as one length-prefixed index list per object and relation
+        for (Center c : graph.centers) {
+            buffer.putInt(c.neighbors.size());
+            c.neighbors.forEach(n -> buffer.putInt(n.index));
+            buffer.putInt(c.corners.size());
+            c.corners.forEach(n -> buffer.putInt(n.index));
+            buffer.putInt(c.borders.size());
+            c.borders.forEach(n -> buffer.putInt(n.index));
+        }
+        for (Corner c : graph.corners) {
+            buffer.putInt(c.touches.size());
+            c.touches.forEach(n -> buffer.putInt(n.index));
+            buffer.putInt(c.adjacent.size());
+            c.adjacent.forEach(n -> buffer.putInt(n.index));
+            buffer.putInt(c.protrudes.size());
+            c.protrudes.forEach(n -> buffer.putInt(n.index));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static DefaultVoronoiGraph read(ByteBuffer buffer, Random r, VoronoiGraph.Generation_Type generationType,
+                                            List<TerrainCircle> circles) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a cached graph of version " + VERSION);
+        }
+        Rectangle bounds = new Rectangle(buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+        long riverSeed = buffer.getLong();
+        VoronoiGraph.River_Type riverType = VoronoiGraph.River_Type.values()[buffer.getInt()];
+        int numCenters = buffer.getInt();
+        int numCorners = buffer.getInt();
+        int numEdges = buffer.getInt();
+        DefaultVoronoiGraph graph = new DefaultVoronoiGraph(bounds, r, riverSeed, riverType, generationType, circles);
+        DefaultVoronoiGraph.ColorData[] biomes = DefaultVoronoiGraph.ColorData.values();
+
+        graph.centers.ensureCapacity(numCenters);
+        for (int i = 0; i < numCenters; i++) {
+            Center c = new Center(new Point(buffer.getDouble(), buffer.getDouble()));
+            c.index = i;
+            c.elevation = buffer.getDouble();
+            c.moisture = buffer.getDouble();
+            c.area = buffer.getDouble();
+            int biome = buffer.getInt();
+            c.biome = biome < 0 ? null : biomes[biome];
+            int flags = buffer.get();
+            c.ocean = (flags & OCEAN) != 0;
+            c.water = (flags & WATER) != 0;
+            c.coast = (flags & COAST) != 0;
+            c.border = (flags & BORDER) != 0;
+            graph.centers.add(c);
+        }
+        graph.corners.ensureCapacity(numCorners);
+        int[] downslopes = new int[numCorners];
+        int[] watersheds = new int[numCorners];
+        double[] distance = new double[numCorners];
+        double[] spreadMoisture = new double[numCorners];
+        boolean[] islandWater = new boolean[numCorners];
+        for (int i = 0; i < numCorners; i++) {
+            Corner c = new Corner();
+            c.index = i;
+            c.loc = new Point(buffer.getDouble(), buffer.getDouble());
+            c.elevation = buffer.getDouble();
+            c.moisture = buffer.getDouble();
+            distance[i] = buffer.getDouble();
+            spreadMoisture[i] = buffer.getDouble();
+            c.river = buffer.getInt();
+            downslopes[i] = buffer.getInt();
+            watersheds[i] = buffer.getInt();
+            c.watershedSize = buffer.getInt();
+            int flags = buffer.get();
+            c.ocean = (flags & OCEAN) != 0;
+            c.water = (flags & WATER) != 0;
+            c.coast = (flags & COAST) != 0;
+            c.border = (flags & BORDER) != 0;
+            islandWater[i] = (flags & ISLAND_WATER) != 0;
+            graph.corners.add(c);
+        }
+        for (int i = 0; i < numCorners; i++) {
+            graph.corners.get(i).downslope = downslopes[i] < 0 ? null : graph.corners.get(downslopes[i]);
+            graph.corners.get(i).watershed = watersheds[i] < 0 ? null : graph.corners.get(watersheds[i]);
+        }
+        graph.edges.ensureCapacity(numEdges);
+        for (int i = 0; i < numEdges; i++) {
+            Edge e = new Edge();
+            e.index = i;
+            int d0 = buffer.getInt(), d1 = buffer.getInt(), v0 = buffer.getInt(), v1 = buffer.getInt();
+            e.d0 = d0 < 0 ? null : graph.centers.get(d0);
+            e.d1 = d1 < 0 ? null : graph.centers.get(d1);
+            e.v0 = v0 < 0 ? null : graph.corners.get(v0);
+            e.v1 = v1 < 0 ? null : graph.corners.get(v1);
+            if (e.v0 != null && e.v1 != null) {
+                e.setVornoi(e.v0, e.v1);
+            }
+            e.river = buffer.getInt();
+            graph.edges.add(e);
+        }
+
+        for (Center c : graph.centers) {
+            readLinks(buffer, graph.centers, c.neighbors);
+            readLinks(buffer, graph.corners, c.corners);
+            readLinks(buffer, graph.edges, c.borders);
+        }
+        for (Corner c : graph.corners) {
+            readLinks(buffer, graph.centers, c.touches);
+            readLinks(buffer, graph.corners, c.adjacent);
+            readLinks(buffer, graph.edges, c.protrudes);
+        }
+        graph.restoreStages(distance, spreadMoisture, islandWater);
+        return graph;
+    }
+
+    private static <T> void readLinks(ByteBuffer buffer, List<T> all, ArrayList<T> links) {
+        int size = buffer.getInt();
+        links.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            links.add(all.get(buffer.getInt()));
+        }
+    }
+
+    private static byte flags(boolean ocean, boolean water, boolean coast, boolean border) {
+        return (byte) ((ocean ? OCEAN : 0) | (water ? WATER : 0) | (coast ? COAST : 0) | (border ? BORDER : 0));
+    }
+
+    private static int index(Center c) {
+        return c == null ? -1 : c.index;
+    }
+
+    private static int index(Corner c) {
+        return c == null ? -1 : c.index;
+    }
+}
@@ -1,8 +1,14 @@
 package model;
 
+import ch.fhnw.ether.scene.mesh.IMesh;
+import com.hoten.delaunay.geom.Rectangle;
 import com.hoten.delaunay.voronoi.VoronoiGraph;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.ISiteSampler;
+import com.hoten.delaunay.voronoi.nodename.as3delaunay.PoissonDiskSampler;
 import com.hoten.delaunay.voronoi.nodename.as3delaunay.Voronoi;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
@@ -16,30 +22,123 @@ public class GraphManager {
 
     final int bounds = 1000;
     final int numSites;
-    final int numLloydRelaxations = 2;
+    // Poisson disk sampling by default: blue noise sites are as even as relaxed
+    // random ones, without the relaxation;
+    // a UniformSiteSampler gets LLOYD_RELAXATIONS instead
+    final ISiteSampler siteSampler;
+    final static int LLOYD_RELAXATIONS = 4;
+    final static int LEVELS_OF_DETAIL = 4;
+    // so that the renderer can leave out what is out of view
+    final static int TILES_PER_SIDE = 8;
+    final int numLloydRelaxations;
+    // maps that were generated before, shared by all managers
+    final static GraphCache cache = new GraphCache(Paths.get("map-cache"), 1L << 30);
     private VoronoiGraph graph;
     private Voronoi voronoi;
+    private final long meshSeed;
+    private List<List<IMesh>> tiles;
+    private List<IMesh> meshes;
+    private LevelOfDetail levels;
 
-    public GraphManager(Random r, long seed, int resolution) {
-       this(r,seed,resolution, VoronoiGraph.Generation_Type.RANDOM,null);
+    public GraphManager(long seed, int resolution) {
+       this(seed,resolution, VoronoiGraph.Generation_Type.RANDOM,null);
     }
 
-    public GraphManager(Random r, long seed, int resolution, VoronoiGraph.Generation_Type generation_type, List<TerrainCircle> circles) {
+    public GraphManager(long seed, int resolution, VoronoiGraph.Generation_Type generation_type, List<TerrainCircle> circles) {
+        this(seed, resolution, generation_type, circles, VoronoiGraph.River_Type.RANDOM_WALKS);
+    }
+
+    public GraphManager(long seed, int resolution, VoronoiGraph.Generation_Type generation_type, List<TerrainCircle> circles,
+                        VoronoiGraph.River_Type riverType) {
+        this(seed, resolution, new PoissonDiskSampler(), generation_type, circles, riverType);
+    }
+
+    public GraphManager(long seed, int resolution, ISiteSampler siteSampler, VoronoiGraph.Generation_Type generation_type, List<TerrainCircle> circles) {
+        this(seed, resolution, siteSampler, generation_type, circles, VoronoiGraph.River_Type.RANDOM_WALKS);
+    }
+
+    /**
+     * @param siteSampler where the sites go; unless they come out well spaced,
+     *                    the diagram is relaxed LLOYD_RELAXATIONS times
+     * @param riverType   how the rivers are laid out
+     */
+    public GraphManager(long seed, int resolution, ISiteSampler siteSampler, VoronoiGraph.Generation_Type generation_type, List<TerrainCircle> circles,
+                        VoronoiGraph.River_Type riverType) {
         this.numSites = resolution;
+        this.siteSampler = siteSampler;
+        this.numLloydRelaxations = siteSampler.wellSpaced() ? 0 : LLOYD_RELAXATIONS;
 
-        voronoi = new Voronoi(numSites, bounds, bounds, r, null);
-        graph = new DefaultVoronoiGraph(voronoi, numLloydRelaxations, r, generation_type, circles);
+        // every stage draws from its own generator, split off the seed, so that
+        // a change to what one stage draws does not reshuffle the others
+        Random seeds = new Random(seed);
+        Random siteRandom = new Random(seeds.nextLong());
+        Random graphRandom = new Random(seeds.nextLong());
+        meshSeed = seeds.nextLong();
 
-        // Save the Map to a file
-        System.out.printf("seed-%s sites-%d lloyds-%d\n", seed, numSites, numLloydRelaxations);
+        String key = GraphCache.key(seed, numSites, numLloydRelaxations, siteSampler,
+                new Rectangle(0, 0, bounds, bounds), generation_type, circles, riverType);
+        // a cached graph runs its stages again from the distances on like a
+        // generated one; only the ones before, e.g. the island, cannot
+        graph = cache.load(key, graphRandom, generation_type, circles);
+        if (graph != null) {
+            System.out.printf("seed-%s sites-%d lloyds-%d cached\n", seed, graph.centers.size(), numLloydRelaxations);
+        } else {
+            voronoi = new Voronoi(siteSampler, numSites, bounds, bounds, siteRandom, null);
+            graph = new DefaultVoronoiGraph(voronoi, numLloydRelaxations, graphRandom, generation_type, circles);
+            System.out.printf("seed-%s sites-%d lloyds-%d\n", seed, voronoi.get_siteCount(), numLloydRelaxations);
+            graph.getStageTimings().forEach(System.out::println);
+            // the graph comes with random walks; other rivers run the stages from them on again
+            if (riverType != graph.getRiverType()) {
+                graph.setRiverType(riverType);
+                graph.update();
+                graph.getStageTimings().forEach(System.out::println);
+            }
+
+            // Save the Map to a file
+            cache.store(key, graph);
+        }
+
+        // the same mesh however often the stages before it run again
+        graph.addStage("mesh", true, () -> {
+            tiles = GraphToMeshConverter.createMapAsTiles(graph, new Random(meshSeed), true, true, TILES_PER_SIDE);
+            meshes = new ArrayList<>();
+            tiles.forEach(meshes::addAll);
+        });
     }
 
     public VoronoiGraph getGraph() {
         return graph;
     }
 
+    /**
+     * @return the diagram the graph was built from, or null if the graph was cached
+     */
     public Voronoi getVoronoi() {
         return voronoi;
     }
 
+    /**
+     * Runs the stages of the graph that were invalidated since, the mesh
+     * among them.
+     *
+     * @return the meshes of the graph as it is now
+     */
+    public List<IMesh> getMeshes() {
+        graph.update();
+        return meshes;
+    }
+
+    /**
+     * @return coarser versions of the meshes for viewing them from afar, tile
+     * by tile, level 0 being the meshes themselves; made again whenever the
+     * meshes were
+     */
+    public LevelOfDetail getLevelsOfDetail() {
+        graph.update();
+        if (levels == null || levels.getTiles(0) != tiles) {
+            levels = new LevelOfDetail(tiles, graph.bounds, graph.centers.size(), LEVELS_OF_DETAIL);
+        }
+        return levels;
+    }
+
 }
@@ -2,66 +2,317 @@ package model;
 
 import ch.fhnw.ether.scene.mesh.DefaultMesh;
 import ch.fhnw.ether.scene.mesh.IMesh;
-import ch.fhnw.ether.scene.mesh.MeshUtilities;
 import ch.fhnw.ether.scene.mesh.geometry.DefaultGeometry;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.IGeometryAttribute;
 import ch.fhnw.ether.scene.mesh.material.ColorMaterial;
 import ch.fhnw.ether.scene.mesh.material.IMaterial;
 import ch.fhnw.util.color.RGBA;
-import com.hoten.delaunay.voronoi.Center;
-import com.hoten.delaunay.voronoi.Corner;
-import com.hoten.delaunay.voronoi.Edge;
+import com.hoten.delaunay.voronoi.Adjacency;
+import com.hoten.delaunay.voronoi.CenterStore;
+import com.hoten.delaunay.voronoi.CornerStore;
+import com.hoten.delaunay.voronoi.EdgeStore;
 import com.hoten.delaunay.voronoi.VoronoiGraph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 /**
  * Created by P on 04.12.2015.
  */
 public class GraphToMeshConverter {
     final private static int HEIGHTFACTOR = 140;
-    final private static int NMESHES = 35000;
 
 
-    public static List<IMesh> createMapAsMesh(VoronoiGraph v, boolean drawBiomes, boolean drawRivers, boolean drawSites, boolean drawCorners, boolean drawDelaunay, boolean drawVoronoi) {
+    /**
+     * Builds one mesh per material in a single walk over the graph: the
+     * triangles of every polygon are counted first, then written straight
+     * into one array per material, the materials in the order they first
+     * appear. Each polygon gets its own range of the array, so that in
+     * parallel they are counted and written without locks. Normals and
+     * colors are only made for the materials that ask for them.
+     */
+    public static List<IMesh> createMapAsMesh(VoronoiGraph v, Random r, boolean drawBiomes, boolean parallel) {
+        List<IMesh> meshes = new ArrayList<>();
+        createMapAsTiles(v, r, drawBiomes, parallel, 1).forEach(meshes::addAll);
+        return meshes;
+    }
+
+    /**
+     * Builds the meshes as {@link #createMapAsMesh} does, but one per
+     * material within each tile of a grid over the map, so that a renderer
+     * can leave out the tiles out of view. A polygon belongs to the tile its
+     * site lies in.
+     *
+     * @return the meshes of each tile that holds any polygons, row by row
+     */
+    public static List<List<IMesh>> createMapAsTiles(VoronoiGraph v, Random r, boolean drawBiomes, boolean parallel, int tilesPerSide) {
+        if (tilesPerSide < 1) {
+            throw new IllegalArgumentException("there must be at least one tile per side, not " + tilesPerSide);
+        }
 
         IMaterial[] colors = null;
         if (!drawBiomes) {
             colors = new ColorMaterial[100];
             for (int i = 0; i < colors.length; i++) {
-                colors[i] = new ColorMaterial(new RGBA((float) Math.random(), (float) Math.random(), (float) Math.random(), 1.f));
+                colors[i] = new ColorMaterial(new RGBA(r.nextFloat(), r.nextFloat(), r.nextFloat(), 1.f));
+            }
+        }
+
+        CenterStore centers = v.getCenterStore();
+        CornerStore corners = v.getCornerStore();
+        // built lazily, so before the threads get to it
+        v.getEdgeStore();
+        // every vertex once, as the triangles share them
+        Vertices centerVertices = new Vertices(centers.size());
+        range(centers.size(), parallel).forEach(c -> setVertex(centerVertices.positions, c, centers.x(c), centers.y(c), centers.elevation(c)));
+        Vertices cornerVertices = new Vertices(corners.size());
+        range(corners.size(), parallel).forEach(c -> setVertex(cornerVertices.positions, c, corners.x(c), corners.y(c), corners.elevation(c)));
+
+        int[] size = new int[centers.size()];
+        range(centers.size(), parallel).forEach(c -> {
+            v.centers.get(c).area = area(v, c);
+            size[c] = drawPolygon(v, c, centerVertices, cornerVertices, null, null, 0);
+        });
+
+        // each polygon's material and tile
+        Map<IMaterial, Integer> materialIndex = new HashMap<>();
+        List<IMaterial> materials = new ArrayList<>();
+        int[] material = new int[centers.size()];
+        int[] tile = new int[centers.size()];
+        for (int c = 0; c < centers.size(); c++) {
+            if (size[c] == 0) {
+                material[c] = -1;
+                continue;
+            }
+            IMaterial m = drawBiomes ? v.getColorAsMaterial(centers.biome(c)) : colors[c % 100];
+            Integer i = materialIndex.get(m);
+            if (i == null) {
+                i = materials.size();
+                materialIndex.put(m, i);
+                materials.add(m);
             }
+            material[c] = i;
+            tile[c] = tileRow(centers.y(c), v, tilesPerSide) * tilesPerSide + tileColumn(centers.x(c), v, tilesPerSide);
         }
-        List<IMesh> meshes = new ArrayList<>(NMESHES); //currently there are 30'000 meshes
 
-        //draw via triangles
-        for (Center c : v.centers) {
-            meshes.addAll(drawPolygonAsMesh(v, c, drawBiomes ? v.getColorAsMaterial(c.biome) : colors[c.index % 100], HEIGHTFACTOR));
-            //drawPolygon(g, c, drawBiomes ? getColor(c.biome) : defaultColors[c.index]);
-            //drawPolygon(pixelCenterGraphics, c, new Color(c.index)); no equivalent implemented
+        // a mesh for every tile and material with polygons, in the order they
+        // first appear, and where each polygon starts in its mesh's array
+        int[] slotOf = new int[tilesPerSide * tilesPerSide * materials.size()];
+        Arrays.fill(slotOf, -1);
+        int[] slotTile = new int[centers.size()];
+        int[] slotMaterial = new int[centers.size()];
+        int numSlots = 0;
+        int[] slot = new int[centers.size()];
+        int[] offset = new int[centers.size()];
+        int[] sizes = new int[centers.size()];
+        for (int c = 0; c < centers.size(); c++) {
+            if (material[c] < 0) {
+                slot[c] = -1;
+                continue;
+            }
+            int key = tile[c] * materials.size() + material[c];
+            if (slotOf[key] < 0) {
+                slotOf[key] = numSlots;
+                slotTile[numSlots] = tile[c];
+                slotMaterial[numSlots] = material[c];
+                numSlots++;
+            }
+            int s = slotOf[key];
+            slot[c] = s;
+            offset[c] = sizes[s];
+            sizes[s] += size[c];
         }
-        List<IMesh> merged = MeshUtilities.mergeMeshes(meshes);
 
-        System.out.println("#meshes after merge: " + merged.size());
+        float[][] positions = new float[numSlots][];
+        float[][] normals = new float[numSlots][];
+        for (int s = 0; s < numSlots; s++) {
+            positions[s] = new float[sizes[s]];
+            if (needs(materials.get(slotMaterial[s]), IGeometry.NORMAL_ARRAY)) {
+                normals[s] = new float[sizes[s]];
+            }
+        }
+        if (Arrays.stream(normals).anyMatch(Objects::nonNull)) {
+            calculateNormals(v, centerVertices, cornerVertices, parallel);
+        }
+        range(centers.size(), parallel).filter(c -> slot[c] >= 0)
+                .forEach(c -> drawPolygon(v, c, centerVertices, cornerVertices, positions[slot[c]], normals[slot[c]], offset[c]));
 
-        return merged;
-        //return meshes;
+        List<List<IMesh>> tileMeshes = new ArrayList<>();
+        for (int t = 0; t < tilesPerSide * tilesPerSide; t++) {
+            tileMeshes.add(new ArrayList<>());
+        }
+        for (int s = 0; s < numSlots; s++) {
+            tileMeshes.get(slotTile[s]).add(createMesh(materials.get(slotMaterial[s]), positions[s], normals[s]));
+        }
+        tileMeshes.removeIf(List::isEmpty);
+
+        System.out.println("#meshes: " + numSlots + " in " + tileMeshes.size() + " tiles");
+
+        return tileMeshes;
     }
 
+    private static int tileColumn(double x, VoronoiGraph v, int tilesPerSide) {
+        return Math.min(Math.max((int) ((x - v.bounds.x) / v.bounds.width * tilesPerSide), 0), tilesPerSide - 1);
+    }
+
+    private static int tileRow(double y, VoronoiGraph v, int tilesPerSide) {
+        return Math.min(Math.max((int) ((y - v.bounds.y) / v.bounds.height * tilesPerSide), 0), tilesPerSide - 1);
+    }
 
-    private static List<IMesh> drawPolygonAsMesh(VoronoiGraph v, Center c, IMaterial color, int HEIGHTFACTOR) {
+    private static IntStream range(int n, boolean parallel) {
+        return parallel ? IntStream.range(0, n).parallel() : IntStream.range(0, n);
+    }
+
+    /**
+     * @return a mesh of triangles with the attributes the material asks for:
+     * the positions, the normals, which must not be null then, and white
+     * vertex colors
+     */
+    static IMesh createMesh(IMaterial material, float[] positions, float[] normals) {
+        IGeometryAttribute[] attributes = material.getGeometryAttributes();
+        float[][] data = new float[attributes.length][];
+        for (int i = 0; i < attributes.length; i++) {
+            if (attributes[i].equals(IGeometry.POSITION_ARRAY)) {
+                data[i] = positions;
+            } else if (attributes[i].equals(IGeometry.NORMAL_ARRAY)) {
+                data[i] = normals;
+            } else if (attributes[i].equals(IGeometry.COLOR_ARRAY)) {
+                // white, which leaves the material's color as it is
+                data[i] = new float[positions.length / 3 * 4];
+                Arrays.fill(data[i], 1);
+            } else {
+                throw new IllegalArgumentException("cannot make " + attributes[i].id() + " for " + material);
+            }
+        }
+        return new DefaultMesh(material, new DefaultGeometry(IGeometry.Primitive.TRIANGLES, attributes, data));
+    }
+
+    static boolean needs(IMaterial material, IGeometryAttribute attribute) {
+        return Arrays.asList(material.getGeometryAttributes()).contains(attribute);
+    }
 
-        List<IMesh> polygon = new ArrayList<>();
+    /**
+     * The positions of the centers or the corners, and the normals if some
+     * material asks for them.
+     */
+    private static final class Vertices {
+        final float[] positions;
+        float[] normals;
+
+        Vertices(int size) {
+            positions = new float[3 * size];
+        }
+    }
+
+    /**
+     * Sets the normal of every center and every corner to the sum of the
+     * normals of the triangles around it, each as long as twice the
+     * triangle's area, so that small triangles count for little. Every
+     * vertex gathers its own triangles, so that they can all do so at once.
+     */
+    private static void calculateNormals(VoronoiGraph v, Vertices centerVertices, Vertices cornerVertices, boolean parallel) {
+        CenterStore centers = v.getCenterStore();
+        CornerStore corners = v.getCornerStore();
+        EdgeStore edges = v.getEdgeStore();
+        float[] p = centerVertices.positions, q = cornerVertices.positions;
+
+        centerVertices.normals = new float[p.length];
+        range(centers.size(), parallel).forEach(c -> {
+            double[] sum = new double[3];
+            Adjacency borders = centers.borders();
+            for (int k = 0; k < borders.size(c); k++) {
+                int e = borders.get(c, k);
+                if (edges.v0(e) >= 0) {
+                    addTriangleNormal(sum, p, c, q, edges.v0(e), edges.v1(e));
+                }
+            }
+            setNormal(centerVertices.normals, c, sum);
+        });
+
+        cornerVertices.normals = new float[q.length];
+        range(corners.size(), parallel).forEach(c -> {
+            double[] sum = new double[3];
+            Adjacency protrudes = corners.protrudes();
+            for (int k = 0; k < protrudes.size(c); k++) {
+                int e = protrudes.get(c, k);
+                if (edges.v0(e) < 0) {
+                    continue;
+                }
+                // the triangle of the edge with either center's site
+                if (edges.d0(e) >= 0) {
+                    addTriangleNormal(sum, p, edges.d0(e), q, edges.v0(e), edges.v1(e));
+                }
+                if (edges.d1(e) >= 0) {
+                    addTriangleNormal(sum, p, edges.d1(e), q, edges.v0(e), edges.v1(e));
+                }
+            }
+            setNormal(cornerVertices.normals, c, sum);
+        });
+    }
+
+    // adds the normal of the triangle between vertex a of p and vertices b
+    // and c of q, pointing up whichever way round they are
+    static void addTriangleNormal(double[] sum, float[] p, int a, float[] q, int b, int c) {
+        double ux = q[3 * b] - p[3 * a];
+        double uy = q[3 * b + 1] - p[3 * a + 1];
+        double uz = q[3 * b + 2] - p[3 * a + 2];
+        double wx = q[3 * c] - p[3 * a];
+        double wy = q[3 * c + 1] - p[3 * a + 1];
+        double wz = q[3 * c + 2] - p[3 * a + 2];
+        double nx = uy * wz - uz * wy;
+        double ny = uz * wx - ux * wz;
+        double nz = ux * wy - uy * wx;
+        double sign = nz < 0 ? -1 : 1;
+        sum[0] += sign * nx;
+        sum[1] += sign * ny;
+        sum[2] += sign * nz;
+    }
+
+    static void setNormal(float[] normals, int i, double[] sum) {
+        double length = Math.sqrt(sum[0] * sum[0] + sum[1] * sum[1] + sum[2] * sum[2]);
+        if (length == 0) {
+            normals[3 * i + 2] = 1;
+            return;
+        }
+        normals[3 * i] = (float) (sum[0] / length);
+        normals[3 * i + 1] = (float) (sum[1] / length);
+        normals[3 * i + 2] = (float) (sum[2] / length);
+    }
+
+    private static void setVertex(float[] vertices, int i, double x, double y, double elevation) {
+        vertices[3 * i] = (float) x;
+        vertices[3 * i + 1] = (float) y;
+        vertices[3 * i + 2] = (float) elevation * HEIGHTFACTOR;
+    }
+
+    /**
+     * Writes the triangles of center c's polygon to positions, and to normals
+     * unless that is null, from index at on, or only counts them if
+     * positions is null.
+     *
+     * @return the index after the last float written
+     */
+    private static int drawPolygon(VoronoiGraph v, int c, Vertices centerVertices, Vertices cornerVertices, float[] positions, float[] normals, int at) {
+        CenterStore centers = v.getCenterStore();
+        CornerStore corners = v.getCornerStore();
+        EdgeStore edges = v.getEdgeStore();
 
         //only used if Center c is on the edge of the graph. allows for completely filling in the outer polygons
-        Corner edgeCorner1 = null;
-        Corner edgeCorner2 = null;
-        c.area = 0;
-        for (Center n : c.neighbors) {
-            Edge e = v.edgeWithCenters(c, n);
+        int edgeCorner1 = -1;
+        int edgeCorner2 = -1;
+        Adjacency borders = centers.borders();
+        for (int k = 0; k < borders.size(c); k++) {
+            int e = borders.get(c, k);
+            int v0 = edges.v0(e), v1 = edges.v1(e);
 
-            if (e.v0 == null) {
+            if (v0 < 0) {
                 //outermost voronoi edges aren't stored in the graph
                 continue;
             }
@@ -71,23 +322,22 @@ public class GraphToMeshConverter {
             //finding these two corners will give us the missing
             //triangle to render. this special triangle is handled
             //outside this for loop
-            Corner cornerWithOneAdjacent = e.v0.border ? e.v0 : e.v1;
-            if (cornerWithOneAdjacent.border) {
-                if (edgeCorner1 == null) {
+            int cornerWithOneAdjacent = corners.isBorder(v0) ? v0 : v1;
+            if (corners.isBorder(cornerWithOneAdjacent)) {
+                if (edgeCorner1 < 0) {
                     edgeCorner1 = cornerWithOneAdjacent;
                 } else {
                     edgeCorner2 = cornerWithOneAdjacent;
                 }
             }
 
-            polygon.add(createTriangle(e.v0, e.v1, c, color, HEIGHTFACTOR));
-            c.area += Math.abs(c.loc.x * (e.v0.loc.y - e.v1.loc.y)
-                    + e.v0.loc.x * (e.v1.loc.y - c.loc.y)
-                    + e.v1.loc.x * (c.loc.y - e.v0.loc.y)) / 2;
+            at = copyVertex(centerVertices, c, positions, normals, at);
+            at = copyVertex(cornerVertices, v0, positions, normals, at);
+            at = copyVertex(cornerVertices, v1, positions, normals, at);
         }
 
         //handle the missing triangle
-        if (edgeCorner2 != null) {
+        if (edgeCorner2 >= 0) {
             //if these two outer corners are NOT on the same exterior edge of the graph,
             //then we actually must render a polygon (w/ 4 points) and take into consideration
             //one of the four corners (either 0,0 or 0,height or width,0 or width,height)
@@ -96,59 +346,61 @@ public class GraphToMeshConverter {
             //with a more useful number of sites.
             //TODO: find a way to fix this
 
-            if (v.closeEnough(edgeCorner1.loc.x, edgeCorner2.loc.x, 1)) {
-                polygon.add(createTriangle(edgeCorner1, edgeCorner2, c, color, HEIGHTFACTOR));
+            double x1 = corners.x(edgeCorner1), y1 = corners.y(edgeCorner1);
+            double x2 = corners.x(edgeCorner2), y2 = corners.y(edgeCorner2);
+            if (v.closeEnough(x1, x2, 1)) {
+                at = copyVertex(centerVertices, c, positions, normals, at);
+                at = copyVertex(cornerVertices, edgeCorner1, positions, normals, at);
+                at = copyVertex(cornerVertices, edgeCorner2, positions, normals, at);
             } else {
-                float[] tr0 = {
-                        (float) c.loc.x, (float) c.loc.y, (float) c.elevation * HEIGHTFACTOR,
-                        (float) edgeCorner2.loc.x, (float) edgeCorner2.loc.y, (float) edgeCorner2.elevation * HEIGHTFACTOR,
-                        (float) edgeCorner1.loc.x, (float) edgeCorner1.loc.y, (float) edgeCorner1.elevation * HEIGHTFACTOR
-                };
-
-                float[] tr1 = {
-                        (float) edgeCorner2.loc.x, (float) edgeCorner2.loc.y, (float) edgeCorner2.elevation * HEIGHTFACTOR,
-                        (float) ((v.closeEnough(edgeCorner1.loc.x, v.bounds.x, 1) || v.closeEnough(edgeCorner2.loc.x, v.bounds.x, .5)) ? v.bounds.x : v.bounds.right),
-                        (float) ((v.closeEnough(edgeCorner1.loc.y, v.bounds.y, 1) || v.closeEnough(edgeCorner2.loc.y, v.bounds.y, .5)) ? v.bounds.y : v.bounds.bottom),
-                        (float) edgeCorner2.elevation * HEIGHTFACTOR, //TODO: almost certainly wrong :/
-                        (float) edgeCorner1.loc.x, (float) edgeCorner1.loc.y, (float) edgeCorner1.elevation * HEIGHTFACTOR
-                };
-                float[] normals = {
-                        0, 1, 0,
-                        0, 1, 0,
-                        0, 1, 0
-                };
-
-                float[] colors = {1, 0, 0, 1, 0, 1, 0, 1, 0, 0, 1, 1};
-
-                DefaultGeometry g = DefaultGeometry.createVNC(IGeometry.Primitive.TRIANGLES, tr0, normals, colors);
-                DefaultGeometry g1 = DefaultGeometry.createVNC(IGeometry.Primitive.TRIANGLES, tr1, normals, colors);
-
-                polygon.add(new DefaultMesh(color, g));
-                polygon.add(new DefaultMesh(color, g1));
-                c.area += 0; //TODO: area of polygon given vertices
-            }
+                at = copyVertex(centerVertices, c, positions, normals, at);
+                at = copyVertex(cornerVertices, edgeCorner2, positions, normals, at);
+                at = copyVertex(cornerVertices, edgeCorner1, positions, normals, at);
 
+                at = copyVertex(cornerVertices, edgeCorner2, positions, normals, at);
+                // the corner of the bounds, with the normal of edgeCorner2
+                int boundsCorner = at;
+                at = copyVertex(cornerVertices, edgeCorner2, positions, normals, at);
+                if (positions != null) {
+                    positions[boundsCorner] = (float) ((v.closeEnough(x1, v.bounds.x, 1) || v.closeEnough(x2, v.bounds.x, .5)) ? v.bounds.x : v.bounds.right);
+                    positions[boundsCorner + 1] = (float) ((v.closeEnough(y1, v.bounds.y, 1) || v.closeEnough(y2, v.bounds.y, .5)) ? v.bounds.y : v.bounds.bottom);
+                    //TODO: the elevation of edgeCorner2, almost certainly wrong :/
+                }
+                at = copyVertex(cornerVertices, edgeCorner1, positions, normals, at);
+            }
         }
+        return at;
+    }
 
-        //return polygon;
-        return MeshUtilities.mergeMeshes(polygon);
+    private static int copyVertex(Vertices vertices, int i, float[] positions, float[] normals, int at) {
+        if (positions != null) {
+            System.arraycopy(vertices.positions, 3 * i, positions, at, 3);
+        }
+        if (normals != null) {
+            System.arraycopy(vertices.normals, 3 * i, normals, at, 3);
+        }
+        return at + 3;
     }
 
-    private static IMesh createTriangle(Corner c1, Corner c2, Center center, IMaterial color, int HEIGHTFACTOR) {
-        float[] vertices = {
-                (float) center.loc.x, (float) center.loc.y, (float) center.elevation * HEIGHTFACTOR,
-                (float) c1.loc.x, (float) c1.loc.y, (float) c1.elevation * HEIGHTFACTOR,
-                (float) c2.loc.x, (float) c2.loc.y, (float) c2.elevation * HEIGHTFACTOR
-        };
-        float[] normals = {
-                0, 1, 0,
-                0, 1, 0,
-                0, 1, 0
-        };
-        float[] colors = {1, 0, 0, 1, 0, 1, 0, 1, 0, 0, 1, 1};
-
-
-        DefaultGeometry g = DefaultGeometry.createVNC(IGeometry.Primitive.TRIANGLES, vertices, normals, colors);
-        return new DefaultMesh(color, g);
+    // the area of the triangles between the site and its polygon's edges;
+    // the ones filling in the border of the graph are left out
+    private static double area(VoronoiGraph v, int c) {
+        CenterStore centers = v.getCenterStore();
+        CornerStore corners = v.getCornerStore();
+        EdgeStore edges = v.getEdgeStore();
+        double area = 0;
+        double cx = centers.x(c), cy = centers.y(c);
+        Adjacency borders = centers.borders();
+        for (int k = 0; k < borders.size(c); k++) {
+            int e = borders.get(c, k);
+            int v0 = edges.v0(e), v1 = edges.v1(e);
+            if (v0 < 0) {
+                continue;
+            }
+            area += Math.abs(cx * (corners.y(v0) - corners.y(v1))
+                    + corners.x(v0) * (corners.y(v1) - cy)
+                    + corners.x(v1) * (cy - corners.y(v0))) / 2;
+        }
+        return area;
     }
 }
@@ -0,0 +1,244 @@
+package model;
+
+import ch.fhnw.ether.scene.mesh.IMesh;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.material.IMaterial;
+import ch.fhnw.util.math.geometry.BoundingBox;
+import com.hoten.delaunay.geom.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Coarser versions of a terrain mesh, for viewing it from afar. Each level
+ * merges the vertices within a cell of a grid over the map into one at their
+ * mean, with cells twice as wide as on the level before; the triangles whose
+ * corners end up in fewer than three cells disappear. Level 0 is the mesh
+ * itself.
+ * <p>
+ * The mesh comes in tiles, and every level keeps them apart, so that each tile
+ * can be shown at the level that suits its own distance from the camera. The
+ * grid is the same for all tiles, so tiles at the same level meet; where a
+ * tile meets one at another level, thin gaps may show along their edge.
+ */
+public class LevelOfDetail {
+
+    // how wide a cell may look from the camera, in radians: about five
+    // pixels of an 800 pixel wide view
+    private static final double TOLERANCE = 0.005;
+
+    // the meshes of each level, tile by tile and all together
+    private final List<List<List<IMesh>>> levels;
+    private final List<List<IMesh>> flatLevels;
+    private final double[] cellSizes;
+    // around the full detail of each tile
+    private final BoundingBox[] tileBounds;
+
+    /**
+     * @param tiles the meshes of the map, tile by tile
+     * @param sites the number of centers the mesh was made of, which tells how
+     *              far apart its vertices are
+     */
+    public LevelOfDetail(List<List<IMesh>> tiles, Rectangle bounds, int sites, int numLevels) {
+        if (numLevels < 1) {
+            throw new IllegalArgumentException("there must be at least one level, not " + numLevels);
+        }
+        double spacing = Math.sqrt(bounds.width * bounds.height / sites);
+        cellSizes = new double[numLevels];
+        for (int level = 0; level < numLevels; level++) {
+            cellSizes[level] = spacing * (1 << level);
+        }
+
+        List<IMesh> mesh = new ArrayList<>();
+        List<Integer> tileOf = new ArrayList<>();
+        tileBounds = new BoundingBox[tiles.size()];
+        for (int tile = 0; tile < tiles.size(); tile++) {
+            tileBounds[tile] = new BoundingBox();
+            for (IMesh m : tiles.get(tile)) {
+                mesh.add(m);
+                tileOf.add(tile);
+                tileBounds[tile].add(m.getGeometry().getData()[0]);
+            }
+        }
+        levels = IntStream.range(0, numLevels).parallel()
+                .mapToObj(level -> level == 0 ? tiles : cluster(mesh, tileOf, tiles.size(), bounds, cellSizes[level]))
+                .collect(Collectors.toList());
+        flatLevels = levels.stream()
+                .map(level -> level.stream().flatMap(List::stream).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    public int getNumLevels() {
+        return levels.size();
+    }
+
+    public int getNumTiles() {
+        return tileBounds.length;
+    }
+
+    /**
+     * @return the meshes of all tiles at the given level
+     */
+    public List<IMesh> getLevel(int level) {
+        return flatLevels.get(level);
+    }
+
+    /**
+     * @return the tiles at the given level, level 0 being the tiles the
+     * levels were made of
+     */
+    public List<List<IMesh>> getTiles(int level) {
+        return levels.get(level);
+    }
+
+    public List<IMesh> getTile(int level, int tile) {
+        return levels.get(level).get(tile);
+    }
+
+    /**
+     * @return how far the given point, in the coordinates of the mesh, lies
+     * from the box around the tile; 0 inside it
+     */
+    public double distanceToTile(int tile, double x, double y, double z) {
+        BoundingBox b = tileBounds[tile];
+        if (!b.isValid()) {
+            return Double.MAX_VALUE;
+        }
+        double dx = Math.max(Math.max(b.getMinX() - x, x - b.getMaxX()), 0);
+        double dy = Math.max(Math.max(b.getMinY() - y, y - b.getMaxY()), 0);
+        double dz = Math.max(Math.max(b.getMinZ() - z, z - b.getMaxZ()), 0);
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * @return the coarsest level whose cells still look small from the given
+     * distance, e.g. to a tile
+     */
+    public int levelFor(double distance) {
+        int level = 0;
+        while (level + 1 < levels.size() && cellSizes[level + 1] <= TOLERANCE * distance) {
+            level++;
+        }
+        return level;
+    }
+
+    // clusters all tiles over one grid, and sorts the meshes that are left
+    // back into their tiles
+    private static List<List<IMesh>> cluster(List<IMesh> mesh, List<Integer> tileOf, int numTiles,
+                                             Rectangle bounds, double cellSize) {
+        int columns = Math.max(1, (int) Math.ceil(bounds.width / cellSize));
+        int rows = Math.max(1, (int) Math.ceil(bounds.height / cellSize));
+        if ((long) columns * rows > 1 << 21) {
+            throw new IllegalArgumentException("cells of " + cellSize + " are too small for a level of detail");
+        }
+
+        // the cell of every vertex, and the mean of the vertices in each cell,
+        // over all materials so that their meshes still meet
+        int[][] cells = new int[mesh.size()][];
+        double[] sum = new double[3 * columns * rows];
+        int[] count = new int[columns * rows];
+        for (int m = 0; m < mesh.size(); m++) {
+            float[] p = mesh.get(m).getGeometry().getData()[0];
+            cells[m] = new int[p.length / 3];
+            for (int i = 0; i < cells[m].length; i++) {
+                int column = Math.min(Math.max((int) ((p[3 * i] - bounds.x) / cellSize), 0), columns - 1);
+                int row = Math.min(Math.max((int) ((p[3 * i + 1] - bounds.y) / cellSize), 0), rows - 1);
+                int cell = row * columns + column;
+                cells[m][i] = cell;
+                count[cell]++;
+                for (int k = 0; k < 3; k++) {
+                    sum[3 * cell + k] += p[3 * i + k];
+                }
+            }
+        }
+        float[] vertices = new float[sum.length];
+        for (int cell = 0; cell < count.length; cell++) {
+            for (int k = 0; count[cell] > 0 && k < 3; k++) {
+                vertices[3 * cell + k] = (float) (sum[3 * cell + k] / count[cell]);
+            }
+        }
+
+        // the triangles between three cells, each once; the first material to
+        // have one keeps it
+        Set<Long> seen = new HashSet<>();
+        boolean[][] kept = new boolean[mesh.size()][];
+        int[] sizes = new int[mesh.size()];
+        boolean normals = false;
+        for (int m = 0; m < mesh.size(); m++) {
+            int[] c = cells[m];
+            kept[m] = new boolean[c.length / 3];
+            for (int t = 0; t < kept[m].length; t++) {
+                int a = c[3 * t], b = c[3 * t + 1], d = c[3 * t + 2];
+                if (a == b || b == d || a == d) {
+                    continue;
+                }
+                int low = Math.min(a, Math.min(b, d));
+                int high = Math.max(a, Math.max(b, d));
+                long key = (long) low << 42 | (long) (a + b + d - low - high) << 21 | high;
+                if (seen.add(key)) {
+                    kept[m][t] = true;
+                    sizes[m] += 9;
+                }
+            }
+            normals |= sizes[m] > 0 && GraphToMeshConverter.needs(mesh.get(m).getMaterial(), IGeometry.NORMAL_ARRAY);
+        }
+
+        float[] cellNormals = null;
+        if (normals) {
+            double[] normalSum = new double[sum.length];
+            double[] triangle = new double[3];
+            for (int m = 0; m < mesh.size(); m++) {
+                int[] c = cells[m];
+                for (int t = 0; t < kept[m].length; t++) {
+                    if (!kept[m][t]) {
+                        continue;
+                    }
+                    Arrays.fill(triangle, 0);
+                    GraphToMeshConverter.addTriangleNormal(triangle, vertices, c[3 * t], vertices, c[3 * t + 1], c[3 * t + 2]);
+                    for (int v = 3 * t; v < 3 * t + 3; v++) {
+                        for (int k = 0; k < 3; k++) {
+                            normalSum[3 * c[v] + k] += triangle[k];
+                        }
+                    }
+                }
+            }
+            cellNormals = new float[sum.length];
+            for (int cell = 0; cell < count.length; cell++) {
+                GraphToMeshConverter.setNormal(cellNormals, cell, Arrays.copyOfRange(normalSum, 3 * cell, 3 * cell + 3));
+            }
+        }
+
+        List<List<IMesh>> level = new ArrayList<>();
+        for (int tile = 0; tile < numTiles; tile++) {
+            level.add(new ArrayList<>());
+        }
+        for (int m = 0; m < mesh.size(); m++) {
+            if (sizes[m] == 0) {
+                continue;
+            }
+            IMaterial material = mesh.get(m).getMaterial();
+            boolean withNormals = GraphToMeshConverter.needs(material, IGeometry.NORMAL_ARRAY);
+            float[] positions = new float[sizes[m]];
+            float[] vertexNormals = withNormals ? new float[sizes[m]] : null;
+            int at = 0;
+            for (int t = 0; t < kept[m].length; t++) {
+                if (!kept[m][t]) {
+                    continue;
+                }
+                for (int v = 3 * t; v < 3 * t + 3; v++, at += 3) {
+                    System.arraycopy(vertices, 3 * cells[m][v], positions, at, 3);
+                    if (withNormals) {
+                        System.arraycopy(cellNormals, 3 * cells[m][v], vertexNormals, at, 3);
+                    }
+                }
+            }
+            level.get(tileOf.get(m)).add(GraphToMeshConverter.createMesh(material, positions, vertexNormals));
+        }
+        return level;
+    }
+}